@@ -0,0 +1,419 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.END_OF_TIME;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToDoubleFunction;
+import org.threeten.extra.Interval;
+
+/**
+ * Index supporting {@link TemporalAggregate time-weighted aggregates} over the current knowledge of a bitemporal
+ * property, for a given function mapping values to numbers.
+ * <p>
+ * The versions making up the current knowledge are kept in a balanced search tree (a treap) ordered by the start of
+ * their validity interval, where every node also holds the count, minimum, maximum and time-weighted sum of its
+ * subtree. An aggregate over a validity range then combines the subtrees fully inside the range with the (at most
+ * two) versions partially overlapping it, in time logarithmic in the size of the current knowledge. Manipulations
+ * of the trace are replayed on the index instead of rebuilding it: they also take logarithmic time, plus the number
+ * of versions they affect.
+ * <p>
+ * Versions with an empty validity interval or a null value are not indexed, since they do not contribute to any
+ * aggregate. When the current knowledge contains overlapping versions, the index is marked unusable.
+ * <p>
+ * Objects of this class are not thread-safe.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+final class AggregateIndex<V> {
+
+	private final ToDoubleFunction<? super V> function;
+	private Node root;
+	private Instant latest = Instant.MIN;
+	private boolean usable = true;
+	private int indexedSize;
+
+	public AggregateIndex(ToDoubleFunction<? super V> function) {
+		this.function = function;
+	}
+
+	/**
+	 * Returns the function used to map values to numbers.
+	 */
+	public ToDoubleFunction<? super V> getFunction() {
+		return function;
+	}
+
+	/**
+	 * Returns the size of the data collection this index reflects.
+	 */
+	public int getIndexedSize() {
+		return indexedSize;
+	}
+
+	public void setIndexedSize(int indexedSize) {
+		this.indexedSize = indexedSize;
+	}
+
+	/**
+	 * Can this index answer aggregate queries as known on given instant? This is the case if nothing was recorded
+	 * after that instant.
+	 */
+	public boolean knows(Instant knownOn) {
+		return usable && !knownOn.isBefore(latest) && knownOn.isBefore(END_OF_TIME);
+	}
+
+	/**
+	 * Load an existing bitemporal, with given value, into the index.
+	 */
+	public void load(Bitemporal bt, V value) {
+		Interval record = bt.getRecordInterval();
+		latest = max(latest, record.getStart());
+		if (!record.getEnd().equals(END_OF_TIME)) {
+			latest = max(latest, record.getEnd());
+		} else if (usable && value != null && !Timeline.isEmpty(bt.getValidityInterval())) {
+			Interval validity = bt.getValidityInterval();
+			usable = put(validity.getStart(), validity.getEnd(), function.applyAsDouble(value));
+		}
+	}
+
+	/**
+	 * Replay the {@link BitemporalTrace#add(Bitemporal) addition} of a value valid for given validity interval,
+	 * recorded at specified instant.
+	 */
+	public void add(Interval validity, V value, Instant recordedAt) {
+		latest = max(latest, recordedAt);
+		if (!usable) {
+			return;
+		}
+
+		Instant start = validity.getStart();
+		Instant end = validity.getEnd();
+		List<Node> overlapping = new ArrayList<>();
+		Node node = lower(start);
+		if (node != null && node.end.isAfter(start)) {
+			overlapping.add(node);
+		}
+		for (node = ceiling(start); node != null && node.start.isBefore(end); node = higher(node.start)) {
+			overlapping.add(node);
+		}
+
+		for (Node bt : overlapping) {
+			root = delete(root, bt.start);
+		}
+		for (Node bt : overlapping) {
+			if (bt.start.isBefore(start)) {
+				put(bt.start, start, bt.value);
+			}
+			if (!end.equals(END_OF_TIME) && bt.start.isBefore(end) && bt.end.isAfter(end)) {
+				put(end, bt.end, bt.value);
+			}
+		}
+		if (value != null && start.isBefore(end)) {
+			put(start, end, function.applyAsDouble(value));
+		}
+	}
+
+	/**
+	 * Replay {@link BitemporalProperty#end(Instant) ending} the version valid on given instant, recorded at
+	 * specified instant.
+	 */
+	public void end(Instant validOn, Instant recordedAt) {
+		latest = max(latest, recordedAt);
+		if (usable) {
+			Node node = floor(validOn);
+			if (node != null && node.end.isAfter(validOn)) {
+				root = delete(root, node.start);
+			}
+		}
+	}
+
+	/**
+	 * Returns the aggregate of the indexed versions over given validity range.
+	 */
+	public TemporalAggregate aggregate(Interval range) {
+		Accumulator acc = new Accumulator();
+		Instant start = range.getStart();
+		Instant end = range.getEnd();
+		if (start.isBefore(end)) {
+			Node first = lower(start);
+			if (first != null && first.end.isAfter(start)) {
+				acc.add(first.value, seconds(start, min(first.end, end)));
+			}
+			Node last = lower(end);
+			if (last != null && !last.start.isBefore(start) && last.end.isAfter(end)) {
+				acc.add(last.value, seconds(last.start, end));
+				end = last.start;
+			}
+			range(root, start, end, acc);
+		}
+		return acc.result();
+	}
+
+	/**
+	 * Returns the number of seconds between given instants.
+	 */
+	static double seconds(Instant start, Instant end) {
+		return (end.getEpochSecond() - start.getEpochSecond()) + (end.getNano() - start.getNano()) / 1e9;
+	}
+
+	static Instant max(Instant a, Instant b) {
+		return a.isAfter(b) ? a : b;
+	}
+
+	static Instant min(Instant a, Instant b) {
+		return a.isBefore(b) ? a : b;
+	}
+
+	// search tree
+
+	private boolean put(Instant start, Instant end, double value) {
+		Node floor = floor(start);
+		if (floor != null && floor.end.isAfter(start)) {
+			return false;
+		}
+		Node higher = higher(start);
+		if (higher != null && higher.start.isBefore(end)) {
+			return false;
+		}
+		root = insert(root, new Node(start, end, value));
+		return true;
+	}
+
+	private Node floor(Instant key) {
+		Node result = null;
+		for (Node node = root; node != null;) {
+			if (node.start.isAfter(key)) {
+				node = node.left;
+			} else {
+				result = node;
+				node = node.right;
+			}
+		}
+		return result;
+	}
+
+	private Node lower(Instant key) {
+		Node result = null;
+		for (Node node = root; node != null;) {
+			if (node.start.isBefore(key)) {
+				result = node;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return result;
+	}
+
+	private Node ceiling(Instant key) {
+		Node result = null;
+		for (Node node = root; node != null;) {
+			if (node.start.isBefore(key)) {
+				node = node.right;
+			} else {
+				result = node;
+				node = node.left;
+			}
+		}
+		return result;
+	}
+
+	private Node higher(Instant key) {
+		Node result = null;
+		for (Node node = root; node != null;) {
+			if (node.start.isAfter(key)) {
+				result = node;
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		return result;
+	}
+
+	private static Node insert(Node node, Node newNode) {
+		if (node == null) {
+			return newNode;
+		}
+		if (newNode.start.isBefore(node.start)) {
+			node.left = insert(node.left, newNode);
+			if (node.left.priority > node.priority) {
+				Node left = node.left;
+				node.left = left.right;
+				left.right = node;
+				node.update();
+				node = left;
+			}
+		} else {
+			node.right = insert(node.right, newNode);
+			if (node.right.priority > node.priority) {
+				Node right = node.right;
+				node.right = right.left;
+				right.left = node;
+				node.update();
+				node = right;
+			}
+		}
+		node.update();
+		return node;
+	}
+
+	private static Node delete(Node node, Instant start) {
+		if (node == null) {
+			return null;
+		}
+		int cmp = start.compareTo(node.start);
+		if (cmp == 0) {
+			return merge(node.left, node.right);
+		} else if (cmp < 0) {
+			node.left = delete(node.left, start);
+		} else {
+			node.right = delete(node.right, start);
+		}
+		node.update();
+		return node;
+	}
+
+	/**
+	 * Merge two trees, all keys in the first tree preceding all keys in the second.
+	 */
+	private static Node merge(Node a, Node b) {
+		if (a == null) {
+			return b;
+		} else if (b == null) {
+			return a;
+		} else if (a.priority > b.priority) {
+			a.right = merge(a.right, b);
+			a.update();
+			return a;
+		} else {
+			b.left = merge(a, b.left);
+			b.update();
+			return b;
+		}
+	}
+
+	/**
+	 * Accumulate all nodes starting in [start, end).
+	 */
+	private static void range(Node node, Instant start, Instant end, Accumulator acc) {
+		while (node != null) {
+			if (node.start.isBefore(start)) {
+				node = node.right;
+			} else if (!node.start.isBefore(end)) {
+				node = node.left;
+			} else {
+				for (Node left = node.left; left != null;) {
+					if (left.start.isBefore(start)) {
+						left = left.right;
+					} else {
+						acc.add(left.right);
+						acc.add(left.value, left.seconds);
+						left = left.left;
+					}
+				}
+				acc.add(node.value, node.seconds);
+				for (Node right = node.right; right != null;) {
+					if (right.start.isBefore(end)) {
+						acc.add(right.left);
+						acc.add(right.value, right.seconds);
+						right = right.right;
+					} else {
+						right = right.left;
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * A version in the search tree, also holding the aggregate of its subtree.
+	 */
+	private static final class Node {
+
+		private final Instant start;
+		private final Instant end;
+		private final double value;
+		private final double seconds;
+		private final int priority = ThreadLocalRandom.current().nextInt();
+		private Node left;
+		private Node right;
+
+		private long subtreeCount;
+		private double subtreeMin;
+		private double subtreeMax;
+		private double subtreeSum;
+		private double subtreeSeconds;
+
+		public Node(Instant start, Instant end, double value) {
+			this.start = start;
+			this.end = end;
+			this.value = value;
+			this.seconds = seconds(start, end);
+			update();
+		}
+
+		public void update() {
+			subtreeCount = 1;
+			subtreeMin = value;
+			subtreeMax = value;
+			subtreeSum = value * seconds;
+			subtreeSeconds = seconds;
+			include(left);
+			include(right);
+		}
+
+		private void include(Node child) {
+			if (child != null) {
+				subtreeCount += child.subtreeCount;
+				subtreeMin = Math.min(subtreeMin, child.subtreeMin);
+				subtreeMax = Math.max(subtreeMax, child.subtreeMax);
+				subtreeSum += child.subtreeSum;
+				subtreeSeconds += child.subtreeSeconds;
+			}
+		}
+	}
+
+	/**
+	 * Accumulates values, weighted by the number of seconds they are valid, into a {@link TemporalAggregate}.
+	 */
+	static final class Accumulator {
+
+		private long count;
+		private double min = Double.POSITIVE_INFINITY;
+		private double max = Double.NEGATIVE_INFINITY;
+		private double sum;
+		private double seconds;
+
+		public void add(double value, double seconds) {
+			count++;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+			sum += value * seconds;
+			this.seconds += seconds;
+		}
+
+		private void add(Node subtree) {
+			if (subtree != null) {
+				count += subtree.subtreeCount;
+				min = Math.min(min, subtree.subtreeMin);
+				max = Math.max(max, subtree.subtreeMax);
+				sum += subtree.subtreeSum;
+				seconds += subtree.subtreeSeconds;
+			}
+		}
+
+		public TemporalAggregate result() {
+			return new TemporalAggregate(count, min, max, sum, seconds);
+		}
+	}
+}
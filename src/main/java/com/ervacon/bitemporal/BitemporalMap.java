@@ -0,0 +1,298 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.fromNow;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import org.threeten.extra.Interval;
+
+/**
+ * Bitemporally tracks a multi-valued property of a class, associating values with keys (for instance the phone
+ * numbers of a person, keyed by type). Conceptually this is a map with a {@link BitemporalProperty} per key.
+ * <p>
+ * All data is kept in a single data collection of {@link BitemporalWrapper}s wrapping {@link Entry map entries},
+ * making it easy to persist. In memory, the data is indexed per key: every key gets its own {@link BitemporalTrace}
+ * and lookups or manipulations for a key never touch the bitemporals of other keys. The index is built lazily
+ * and rebuilt when the data collection is modified behind the back of the map.
+ * <p>
+ * A bitemporal map will be serializable if all keys and values are serializable.
+ * <p>
+ * A bitemporal map is not thread-safe.
+ *
+ * @see BitemporalSet
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+@SuppressWarnings("unchecked")
+public class BitemporalMap<K, V> implements Serializable {
+
+	private final Collection<Bitemporal> data;
+
+	private transient Map<K, BitemporalProperty<V, BitemporalWrapper<Entry<K, V>>>> index;
+	private transient int indexedSize;
+
+	/**
+	 * Create a new bitemporal map working on top of given data collection, which should contain
+	 * {@link BitemporalWrapper}s wrapping {@link Entry map entries}.
+	 */
+	public BitemporalMap(Collection<? extends Bitemporal> data) {
+		this.data = (Collection<Bitemporal>) requireNonNull(data, "The bitemporal data is required");
+	}
+
+	/**
+	 * Returns the wrapped data collection.
+	 */
+	public Collection<Bitemporal> getData() {
+		return data;
+	}
+
+	/**
+	 * Returns the bitemporal property tracking the value associated with given key. The property only sees
+	 * the bitemporals of that key.
+	 */
+	public BitemporalProperty<V, BitemporalWrapper<Entry<K, V>>> get(K key) {
+		return index().computeIfAbsent(key, this::newProperty);
+	}
+
+	/**
+	 * Returns all keys that were ever associated with a value.
+	 */
+	public Set<K> keys() {
+		Set<K> keys = new HashSet<>();
+		index().forEach((key, property) -> {
+			if (!property.getTrace().getData().isEmpty()) {
+				keys.add(key);
+			}
+		});
+		return keys;
+	}
+
+	/**
+	 * Returns whether or not given key has a value valid on specified instant as known on given instant.
+	 */
+	public boolean containsKey(K key, Instant validOn, Instant knownOn) {
+		BitemporalProperty<V, ?> property = index().get(key);
+		return property != null && property.hasValueOn(validOn, knownOn);
+	}
+
+	/**
+	 * Returns the value associated with given key, valid on specified instant as known on given instant.
+	 */
+	public V on(K key, Instant validOn, Instant knownOn) {
+		BitemporalProperty<V, ?> property = index().get(key);
+		return property == null ? null : property.on(validOn, knownOn);
+	}
+
+	/**
+	 * Returns the map valid {@link TimeUtils#now() now} as currently known.
+	 */
+	public Map<K, V> now() {
+		Instant now = TimeUtils.now();
+		return on(now, now);
+	}
+
+	/**
+	 * Returns the map valid on specified instant as currently known.
+	 */
+	public Map<K, V> on(Instant validOn) {
+		return on(validOn, TimeUtils.now());
+	}
+
+	/**
+	 * Returns the map valid on specified instant as known on given instant. Keys without a value are not included.
+	 */
+	public Map<K, V> on(Instant validOn, Instant knownOn) {
+		Map<K, V> result = new LinkedHashMap<>();
+		index().forEach((key, property) -> {
+			BitemporalWrapper<Entry<K, V>> bt = property.get(validOn, knownOn);
+			if (bt != null) {
+				result.put(key, bt.getValue().getValue());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Associate given value with specified key. The new value will be valid {@link TimeUtils#fromNow() from now on}.
+	 */
+	public void put(K key, V value) {
+		put(key, value, fromNow());
+	}
+
+	/**
+	 * Associate given value with specified key for specified validity interval.
+	 */
+	public void put(K key, V value, Interval validityInterval) {
+		get(key).set(value, validityInterval);
+	}
+
+	/**
+	 * <i>Forget</i> the value currently associated with given key.
+	 */
+	public void remove(K key) {
+		remove(key, TimeUtils.now());
+	}
+
+	/**
+	 * <i>Forget</i> the value associated with given key valid on given instant.
+	 */
+	public void remove(K key, Instant validOn) {
+		BitemporalProperty<V, ?> property = index().get(key);
+		if (property != null) {
+			property.end(validOn);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(now());
+	}
+
+	/**
+	 * Returns the per-key index, (re)building it if needed.
+	 */
+	private Map<K, BitemporalProperty<V, BitemporalWrapper<Entry<K, V>>>> index() {
+		if (index == null || indexedSize != data.size()) {
+			Map<K, BitemporalProperty<V, BitemporalWrapper<Entry<K, V>>>> rebuilt = new HashMap<>();
+			for (Bitemporal bt : data) {
+				K key = ((BitemporalWrapper<Entry<K, V>>) bt).getValue().getKey();
+				KeyData keyData = (KeyData) rebuilt.computeIfAbsent(key, this::newProperty).getTrace().getData();
+				keyData.bitemporals.add(bt);
+			}
+			index = rebuilt;
+			indexedSize = data.size();
+		}
+		return index;
+	}
+
+	private BitemporalProperty<V, BitemporalWrapper<Entry<K, V>>> newProperty(K key) {
+		return new BitemporalProperty<>(new BitemporalTrace(new KeyData()), new EntryAccessor<>(key));
+	}
+
+	/**
+	 * The data of a single key. Additions are also added to the data collection of the map.
+	 */
+	private class KeyData extends AbstractList<Bitemporal> implements RandomAccess {
+
+		private final List<Bitemporal> bitemporals = new ArrayList<>();
+
+		@Override
+		public Bitemporal get(int index) {
+			return bitemporals.get(index);
+		}
+
+		@Override
+		public int size() {
+			return bitemporals.size();
+		}
+
+		@Override
+		public boolean add(Bitemporal bt) {
+			bitemporals.add(bt);
+			data.add(bt);
+			indexedSize++;
+			return true;
+		}
+	}
+
+	/**
+	 * Accessor for the values associated with a given key.
+	 */
+	private static class EntryAccessor<K, V> implements ValueAccessor<V, BitemporalWrapper<Entry<K, V>>> {
+
+		private final K key;
+
+		public EntryAccessor(K key) {
+			this.key = key;
+		}
+
+		@Override
+		public V extractValue(BitemporalWrapper<Entry<K, V>> t) {
+			if (t == null) {
+				return null;
+			} else {
+				return t.getValue().getValue();
+			}
+		}
+
+		@Override
+		public BitemporalWrapper<Entry<K, V>> wrapValue(V value, Interval validityInterval) {
+			return new BitemporalWrapper<>(new Entry<>(key, value), validityInterval);
+		}
+	}
+
+	/**
+	 * An immutable key-value pair, the values tracked by a bitemporal map.
+	 */
+	public static final class Entry<K, V> implements Map.Entry<K, V>, Serializable {
+
+		private K key;
+		private V value;
+
+		/**
+		 * For Hibernate.
+		 */
+		@SuppressWarnings("unused")
+		private Entry() {
+		}
+
+		public Entry(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V value) {
+			throw new UnsupportedOperationException("Bitemporal map entries are immutable");
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (obj instanceof Map.Entry) {
+				Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+				return Objects.equals(other.getKey(), this.key) && Objects.equals(other.getValue(), this.value);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(key) ^ Objects.hashCode(value);
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+}
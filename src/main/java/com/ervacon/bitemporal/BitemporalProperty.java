@@ -9,8 +9,12 @@ import static java.util.Objects.requireNonNull;
 
 import java.io.Serializable;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.ToDoubleFunction;
 import org.threeten.extra.Interval;
 
 /**
@@ -20,6 +24,16 @@ import org.threeten.extra.Interval;
  * (e.g. String), layered on top of low-level constructs such as a {@link BitemporalTrace} and {@link Bitemporal} objects.
  * To be able to provide an API at the level of actual value classes, the {@link BitemporalProperty} uses
  * a {@link ValueAccessor} to extract actual values from {@link Bitemporal} objects.
+ * <p>
+ * A bitemporal property holds no state besides its trace and accessor, so an entity can create it once and
+ * hand out the same instance on every call, as long as the wrapped data collection does not change. Point reads
+ * ({@link #now()}, {@link #on(Instant)}, {@link #on(Instant, Instant)}) then don't allocate, apart from the
+ * {@link TimeUtils#now() current time} when no reference time is set.
+ * <p>
+ * Numeric properties can be {@link #aggregate(Interval, Instant, ToDoubleFunction) aggregated} over a validity range.
+ * Aggregates over the current knowledge are served from an index that is kept up to date by the manipulations done
+ * through this property, and rebuilt when the size of the data collection changes behind its back. Again, this
+ * works best when the property is created once and reused.
  *
  * @author Erwin Vervaet
  * @author Christophe Vanfleteren
@@ -30,6 +44,8 @@ public class BitemporalProperty<V, T extends Bitemporal> implements Serializable
 	private BitemporalTrace trace;
 	private ValueAccessor<V, T> accessor;
 
+	private transient AggregateIndex<V> aggregates;
+
 	/**
 	 * Create a new bitemporal property setting up a trace using given data and using given value accessor.
 	 */
@@ -52,6 +68,14 @@ public class BitemporalProperty<V, T extends Bitemporal> implements Serializable
 		return trace;
 	}
 
+	/**
+	 * Returns whether or not this property works on top of given data collection. Entities caching a property
+	 * can use this to detect that their data collection was replaced (e.g. by an ORM tool).
+	 */
+	public boolean isBackedBy(Collection<?> data) {
+		return trace.isBackedBy(data);
+	}
+
 	/**
 	 * Returns the value valid {@link TimeUtils#now() now} as currently known.
 	 */
@@ -77,7 +101,8 @@ public class BitemporalProperty<V, T extends Bitemporal> implements Serializable
 	 * Returns the bitemporal valid {@link TimeUtils#now() now} as currently known.
 	 */
 	public T get() {
-		return get(TimeUtils.now());
+		Instant now = TimeUtils.now();
+		return get(now, now);
 	}
 
 	/**
@@ -91,13 +116,8 @@ public class BitemporalProperty<V, T extends Bitemporal> implements Serializable
 	 * Returns the bitemporal valid on specified instant as known on given instant.
 	 */
 	public T get(Instant validOn, Instant knownOn) {
-		Collection<T> coll = (Collection<T>) trace.get(validOn, knownOn);
-		if (coll.isEmpty()) {
-			return null;
-		} else {
-			// assume single valued
-			return coll.iterator().next();
-		}
+		// assume single valued
+		return (T) trace.find(validOn, knownOn);
 	}
 
 	/**
@@ -143,7 +163,21 @@ public class BitemporalProperty<V, T extends Bitemporal> implements Serializable
 	 * Set the value of this bitemporal property for specified validity interval.
 	 */
 	public void set(V value, Interval validityInterval) {
-		trace.add(accessor.wrapValue(value, validityInterval));
+		add(accessor.wrapValue(value, validityInterval));
+	}
+
+	/**
+	 * Add given bitemporal to the trace. Subclasses offering additional mutators should use this method rather than
+	 * adding to the trace directly, to keep the aggregate index up to date.
+	 */
+	protected void add(T bt) {
+		boolean indexed = isAggregateIndexCurrent();
+		V value = indexed ? accessor.extractValue(bt) : null; // before the trace takes over the bitemporal
+		trace.add(bt);
+		if (indexed) {
+			aggregates.add(bt.getValidityInterval(), value, TimeUtils.now());
+			aggregates.setIndexedSize(trace.getData().size());
+		}
 	}
 
 	/**
@@ -157,14 +191,18 @@ public class BitemporalProperty<V, T extends Bitemporal> implements Serializable
 	 * <i>Forget</i> the value valid on given instant.
 	 */
 	public void end(Instant validOn) {
-		trace.get(validOn, TimeUtils.now()).forEach(bt -> bt.end());
+		trace.end(validOn);
+		if (isAggregateIndexCurrent()) {
+			aggregates.end(validOn, TimeUtils.now());
+		}
 	}
 
 	/**
 	 * Returns whether or not this property has a known value currently valid.
 	 */
 	public boolean hasValue() {
-		return hasValueOn(TimeUtils.now());
+		Instant now = TimeUtils.now();
+		return hasValueOn(now, now);
 	}
 
 	/**
@@ -178,11 +216,135 @@ public class BitemporalProperty<V, T extends Bitemporal> implements Serializable
 	 * Returns whether or not this property had a value valid on given instant as known on specified instant.
 	 */
 	public boolean hasValueOn(Instant validOn, Instant knownOn) {
-		return !trace.get(validOn, knownOn).isEmpty();
+		return trace.find(validOn, knownOn) != null;
+	}
+
+	/**
+	 * Returns the time-weighted aggregate of the values valid during given validity range as currently known,
+	 * using given function to map values to numbers.
+	 * @see #aggregate(Interval, Instant, ToDoubleFunction)
+	 */
+	public TemporalAggregate aggregate(Interval range, ToDoubleFunction<? super V> function) {
+		return aggregate(range, TimeUtils.now(), function);
+	}
+
+	/**
+	 * Returns the time-weighted aggregate of the values valid during given validity range as known on specified
+	 * instant, using given function to map values to numbers. Null values are ignored.
+	 * <p>
+	 * Aggregates over the current knowledge take time logarithmic in the size of the history, using an index that
+	 * is built for the function used. Pass the same function instance on every call (e.g. a constant) to avoid
+	 * rebuilding that index. Aggregates over past knowledge scan the trace.
+	 */
+	public TemporalAggregate aggregate(Interval range, Instant knownOn, ToDoubleFunction<? super V> function) {
+		requireNonNull(range, "The validity range is required");
+		requireNonNull(knownOn, "The knowledge instant is required");
+		requireNonNull(function, "The function is required");
+
+		Collection<Bitemporal> data = trace.getData();
+		if (aggregates == null || aggregates.getFunction() != function || aggregates.getIndexedSize() != data.size()) {
+			AggregateIndex<V> index = new AggregateIndex<>(function);
+			data.forEach(bt -> index.load(bt, accessor.extractValue((T) bt)));
+			index.setIndexedSize(data.size());
+			aggregates = index;
+		}
+		if (aggregates.knows(knownOn)) {
+			return aggregates.aggregate(range);
+		}
+
+		AggregateIndex.Accumulator acc = new AggregateIndex.Accumulator();
+		for (T bt : getHistory(knownOn)) {
+			V value = accessor.extractValue(bt);
+			Instant start = AggregateIndex.max(range.getStart(), bt.getValidityInterval().getStart());
+			Instant end = AggregateIndex.min(range.getEnd(), bt.getValidityInterval().getEnd());
+			if (value != null && start.isBefore(end)) {
+				acc.add(function.applyAsDouble(value), AggregateIndex.seconds(start, end));
+			}
+		}
+		return acc.result();
+	}
+
+	/**
+	 * Returns the validity ranges in which the values of this property and given other property differ, as
+	 * currently known.
+	 * @see #differences(BitemporalProperty, Instant)
+	 */
+	public List<Interval> differences(BitemporalProperty<V, ?> other) {
+		return differences(other, TimeUtils.now());
+	}
+
+	/**
+	 * Returns the validity ranges in which the values of this property and given other property differ, as known on
+	 * specified instant. Values are compared using their equals method, and having a value differs from having no
+	 * value. The returned ranges are ordered and as long as possible: adjacent ranges are merged.
+	 * <p>
+	 * Both {@link BitemporalTrace#getOrderedHistory(Instant) ordered histories} are merged, so this takes time linear
+	 * in the size of both histories. For the current knowledge, the histories are not even materialized.
+	 */
+	public List<Interval> differences(BitemporalProperty<V, ?> other, Instant knownOn) {
+		requireNonNull(other, "The other property is required");
+		requireNonNull(knownOn, "The knowledge instant is required");
+
+		List<Interval> result = new ArrayList<>();
+		Iterator<Bitemporal> these = trace.getOrderedHistory(knownOn).iterator();
+		Iterator<Bitemporal> those = other.getTrace().getOrderedHistory(knownOn).iterator();
+		Bitemporal a = these.hasNext() ? these.next() : null;
+		Bitemporal b = those.hasNext() ? those.next() : null;
+		Instant position = null;
+		while (a != null || b != null) {
+			if (position == null) {
+				position = a == null ? start(b) : b == null ? start(a) : AggregateIndex.min(start(a), start(b));
+			}
+			boolean inA = a != null && !start(a).isAfter(position);
+			boolean inB = b != null && !start(b).isAfter(position);
+			Instant next = AggregateIndex.min(boundary(a, inA), boundary(b, inB));
+			if ((inA || inB) && (inA != inB || !Objects.equals(extractValue(a), other.extractValue(b)))) {
+				Interval last = result.isEmpty() ? null : result.get(result.size() - 1);
+				if (last != null && last.getEnd().equals(position)) {
+					result.set(result.size() - 1, last.withEnd(next));
+				} else {
+					result.add(Interval.of(position, next));
+				}
+			}
+			position = next;
+			if (a != null && !a.getValidityInterval().getEnd().isAfter(position)) {
+				a = these.hasNext() ? these.next() : null;
+			}
+			if (b != null && !b.getValidityInterval().getEnd().isAfter(position)) {
+				b = those.hasNext() ? those.next() : null;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the value wrapped by given bitemporal of the trace.
+	 */
+	V extractValue(Bitemporal bt) {
+		return accessor.extractValue((T) bt);
 	}
 
 	@Override
 	public String toString() {
 		return String.valueOf(now());
 	}
+
+	private static Instant start(Bitemporal bt) {
+		return bt.getValidityInterval().getStart();
+	}
+
+	/**
+	 * Returns the next instant on which the value of given bitemporal starts or stops being valid, given whether or
+	 * not we're currently in its validity interval.
+	 */
+	private static Instant boundary(Bitemporal bt, boolean in) {
+		if (bt == null) {
+			return Instant.MAX;
+		}
+		return in ? bt.getValidityInterval().getEnd() : bt.getValidityInterval().getStart();
+	}
+
+	private boolean isAggregateIndexCurrent() {
+		return aggregates != null && aggregates.getIndexedSize() == trace.getData().size();
+	}
 }
@@ -0,0 +1,185 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.from;
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.threeten.extra.Interval;
+
+/**
+ * An in-memory repository of bitemporal properties, keyed by entity id, that can safely be used by many threads.
+ * <p>
+ * Since bitemporal traces are not thread-safe, the repository is partitioned into shards, each owning the traces of
+ * a subset of the entities. Every shard has a single writer thread applying all manipulations of its traces, so
+ * writes are asynchronous and writes to entities in different shards proceed in parallel. Reads are served directly
+ * on the calling thread and only wait for a write in progress on the same shard.
+ * <p>
+ * Manipulations are recorded at the {@link TimeUtils#now() time} they are submitted, not the time they are applied
+ * by the writer thread. Manipulations of a single entity are applied in the order they were submitted.
+ * <p>
+ * Close the repository to stop the writer threads.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class BitemporalRepository<ID, V> implements AutoCloseable {
+
+	private final List<Shard<ID, V>> shards;
+
+	/**
+	 * Create a new repository with a shard per available processor.
+	 */
+	public BitemporalRepository() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a new repository with given number of shards.
+	 */
+	public BitemporalRepository(int shardCount) {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("At least one shard is required");
+		}
+		List<Shard<ID, V>> shards = new ArrayList<>(shardCount);
+		for (int i = 0; i < shardCount; i++) {
+			shards.add(new Shard<>(i));
+		}
+		this.shards = Collections.unmodifiableList(shards);
+	}
+
+	/**
+	 * Returns the value of given entity valid {@link TimeUtils#now() now} as currently known.
+	 */
+	public V now(ID id) {
+		Instant now = TimeUtils.now();
+		return on(id, now, now);
+	}
+
+	/**
+	 * Returns the value of given entity valid on specified instant as currently known.
+	 */
+	public V on(ID id, Instant validOn) {
+		return on(id, validOn, TimeUtils.now());
+	}
+
+	/**
+	 * Returns the value of given entity valid on specified instant as known on given instant.
+	 */
+	public V on(ID id, Instant validOn, Instant knownOn) {
+		return shard(id).read(id, property -> property.on(validOn, knownOn));
+	}
+
+	/**
+	 * Set the value of given entity. The new value will be valid {@link TimeUtils#fromNow() from now on}.
+	 * @return a future completing once the value has been set
+	 */
+	public CompletableFuture<Void> set(ID id, V value) {
+		Instant now = TimeUtils.now();
+		return shard(id).write(id, now, property -> property.set(value, from(now)));
+	}
+
+	/**
+	 * Set the value of given entity for specified validity interval.
+	 * @return a future completing once the value has been set
+	 */
+	public CompletableFuture<Void> set(ID id, V value, Interval validityInterval) {
+		requireNonNull(validityInterval, "The validity interval is required");
+		return shard(id).write(id, TimeUtils.now(), property -> property.set(value, validityInterval));
+	}
+
+	/**
+	 * <i>Forget</i> the currently valid value of given entity.
+	 * @return a future completing once the value has been forgotten
+	 */
+	public CompletableFuture<Void> end(ID id) {
+		Instant now = TimeUtils.now();
+		return shard(id).write(id, now, property -> property.end(now));
+	}
+
+	/**
+	 * <i>Forget</i> the value of given entity valid on given instant.
+	 * @return a future completing once the value has been forgotten
+	 */
+	public CompletableFuture<Void> end(ID id, Instant validOn) {
+		requireNonNull(validOn, "The validity instant is required");
+		return shard(id).write(id, TimeUtils.now(), property -> property.end(validOn));
+	}
+
+	/**
+	 * Stop the writer threads, after applying all manipulations submitted so far.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		shards.forEach(shard -> shard.writer.shutdown());
+		for (Shard<ID, V> shard : shards) {
+			shard.writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private Shard<ID, V> shard(ID id) {
+		int hash = requireNonNull(id, "The entity id is required").hashCode();
+		return shards.get(Math.floorMod(hash ^ (hash >>> 16), shards.size()));
+	}
+
+	/**
+	 * A shard of the repository: the properties of some entities and the single thread writing them.
+	 */
+	private static class Shard<ID, V> {
+
+		private final Map<ID, WrappedBitemporalProperty<V>> properties = new HashMap<>();
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+		private final ExecutorService writer;
+
+		public Shard(int number) {
+			this.writer = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "bitemporal-shard-" + number);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		public <R> R read(ID id, Function<WrappedBitemporalProperty<V>, R> reader) {
+			lock.readLock().lock();
+			try {
+				WrappedBitemporalProperty<V> property = properties.get(id);
+				return property == null ? null : reader.apply(property);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		public CompletableFuture<Void> write(ID id, Instant now, Consumer<WrappedBitemporalProperty<V>> writer) {
+			return CompletableFuture.runAsync(() -> {
+				lock.writeLock().lock();
+				try {
+					WrappedBitemporalProperty<V> property = properties.get(id);
+					if (property == null) {
+						property = new WrappedBitemporalProperty<>(new ArrayList<>());
+						properties.put(id, property);
+					}
+					WrappedBitemporalProperty<V> target = property;
+					TimeUtils.runAt(now, () -> writer.accept(target));
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}, this.writer);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.fromNow;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Set;
+import org.threeten.extra.Interval;
+
+/**
+ * Bitemporally tracks a set of elements (for instance the nationalities of a person). An element is a member of
+ * the set during its validity intervals, as known at some instant.
+ * <p>
+ * A bitemporal set is a {@link BitemporalMap} mapping its elements to {@link Boolean#TRUE}, so it shares the data
+ * layout and the per-element indexing of a bitemporal map.
+ * <p>
+ * A bitemporal set will be serializable if all elements are serializable.
+ * <p>
+ * A bitemporal set is not thread-safe.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class BitemporalSet<E> implements Serializable {
+
+	private final BitemporalMap<E, Boolean> map;
+
+	/**
+	 * Create a new bitemporal set working on top of given data collection, which should contain
+	 * {@link BitemporalWrapper}s wrapping {@link BitemporalMap.Entry map entries}.
+	 */
+	public BitemporalSet(Collection<? extends Bitemporal> data) {
+		this.map = new BitemporalMap<>(data);
+	}
+
+	/**
+	 * Returns the underlying bitemporal map.
+	 */
+	public BitemporalMap<E, Boolean> getMap() {
+		return map;
+	}
+
+	/**
+	 * Returns the bitemporal property tracking the membership of given element.
+	 */
+	public BitemporalProperty<Boolean, BitemporalWrapper<BitemporalMap.Entry<E, Boolean>>> get(E element) {
+		return map.get(element);
+	}
+
+	/**
+	 * Returns whether or not given element is a member of the set on specified instant as known on given instant.
+	 */
+	public boolean contains(E element, Instant validOn, Instant knownOn) {
+		return map.containsKey(element, validOn, knownOn);
+	}
+
+	/**
+	 * Returns the set valid {@link TimeUtils#now() now} as currently known.
+	 */
+	public Set<E> now() {
+		return map.now().keySet();
+	}
+
+	/**
+	 * Returns the set valid on specified instant as currently known.
+	 */
+	public Set<E> on(Instant validOn) {
+		return map.on(validOn).keySet();
+	}
+
+	/**
+	 * Returns the set valid on specified instant as known on given instant.
+	 */
+	public Set<E> on(Instant validOn, Instant knownOn) {
+		return map.on(validOn, knownOn).keySet();
+	}
+
+	/**
+	 * Add given element to the set. The element will be a member {@link TimeUtils#fromNow() from now on}.
+	 */
+	public void add(E element) {
+		add(element, fromNow());
+	}
+
+	/**
+	 * Add given element to the set for specified validity interval.
+	 */
+	public void add(E element, Interval validityInterval) {
+		map.put(element, Boolean.TRUE, validityInterval);
+	}
+
+	/**
+	 * <i>Forget</i> the current membership of given element.
+	 */
+	public void remove(E element) {
+		map.remove(element);
+	}
+
+	/**
+	 * <i>Forget</i> the membership of given element valid on given instant.
+	 */
+	public void remove(E element, Instant validOn) {
+		map.remove(element, validOn);
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(now());
+	}
+}
@@ -16,8 +16,12 @@ import java.io.Serializable;
 import java.io.StringWriter;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.RandomAccess;
+import org.threeten.extra.Interval;
 
 /**
  * A trace of {@link Bitemporal} objects, bitemporally tracking some value (for instance a person's name).
@@ -30,6 +34,9 @@ import java.util.List;
  * A bitemporal trace will be serializable if all the bitemporals it contains are serializable.
  * <p>
  * A bitemporal trace is not thread-safe.
+ * <p>
+ * Point lookups using {@link #find(Instant, Instant)} do not allocate. When the wrapped data collection is a
+ * {@link RandomAccess} list (e.g. an {@link java.util.ArrayList}), they do not even allocate an iterator.
  *
  * @author Erwin Vervaet
  * @author Christophe Vanfleteren
@@ -38,6 +45,13 @@ public class BitemporalTrace implements Serializable {
 
 	private final Collection<Bitemporal> data;
 
+	// index of the current knowledge, speeding up manipulations, rebuilt when the indexed data changes size
+	private transient Collection<Bitemporal> indexedData;
+	private transient Timeline<Bitemporal> currentKnowledge;
+	private transient Instant latestRecordStart;
+	private transient Instant latestRecordEnd;
+	private transient int indexedSize;
+
 	/**
 	 * Create a new bitemporal trace working on top of given data collection.
 	 */
@@ -52,25 +66,85 @@ public class BitemporalTrace implements Serializable {
 		return this.data;
 	}
 
+	/**
+	 * Returns whether or not this trace works on top of given data collection.
+	 */
+	public boolean isBackedBy(Collection<?> data) {
+		return this.data == data;
+	}
+
+	/**
+	 * Returns the part of the wrapped data collection that contains all {@link Bitemporal} objects known on given
+	 * instant. By default this is the entire data collection, but subclasses that partition the data can narrow
+	 * it down.
+	 */
+	protected Collection<Bitemporal> getData(Instant knownOn) {
+		return this.data;
+	}
+
 	/**
 	 * Returns the {@link Bitemporal} objects valid on given instant as known on specified instant.
 	 */
 	public List<Bitemporal> get(Instant validOn, Instant knownOn) {
-		return data.stream()
-				.filter(bt -> bt.getValidityInterval().contains(validOn) && bt.getRecordInterval().contains(knownOn))
+		return getData(knownOn).stream()
+				.filter(bt -> matches(bt, validOn, knownOn))
 				.collect(toCollection(LinkedList::new));
 	}
 
+	/**
+	 * Returns the first {@link Bitemporal} object valid on given instant as known on specified instant, or null
+	 * if there is none. This is the allocation-free counterpart of {@link #get(Instant, Instant)} for single
+	 * valued traces.
+	 */
+	@SuppressWarnings("unchecked")
+	public Bitemporal find(Instant validOn, Instant knownOn) {
+		Collection<Bitemporal> data = getData(knownOn);
+		if (data instanceof RandomAccess && data instanceof List) {
+			List<Bitemporal> list = (List<Bitemporal>) data;
+			for (int i = 0, size = list.size(); i < size; i++) {
+				Bitemporal bt = list.get(i);
+				if (matches(bt, validOn, knownOn)) {
+					return bt;
+				}
+			}
+		} else {
+			for (Bitemporal bt : data) {
+				if (matches(bt, validOn, knownOn)) {
+					return bt;
+				}
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Returns the history of the tracked value, as known on specified time.
 	 * The history informs you about how the valid value changed over time.
 	 */
 	public List<Bitemporal> getHistory(Instant knownOn) {
-		return data.stream()
+		return getData(knownOn).stream()
 				.filter(bt -> bt.getRecordInterval().contains(knownOn))
 				.collect(toCollection(LinkedList::new));
 	}
 
+	/**
+	 * Returns the history of the tracked value as known on specified time, ordered by validity. Bitemporals with an
+	 * empty validity interval are left out, since they are never valid.
+	 * <p>
+	 * When the index of the current knowledge reflects the knowledge on given instant (typically when asking about
+	 * the current knowledge), this returns a read-only view of the index, without scanning or sorting the trace.
+	 */
+	public Collection<Bitemporal> getOrderedHistory(Instant knownOn) {
+		requireNonNull(knownOn, "The knowledge instant is required");
+		if (isIndexed(knownOn) && !latestRecordStart.isAfter(knownOn)) {
+			return Collections.unmodifiableCollection(currentKnowledge.values());
+		}
+		return getHistory(knownOn).stream()
+				.filter(bt -> !Timeline.isEmpty(bt.getValidityInterval()))
+				.sorted(Comparator.comparing(bt -> bt.getValidityInterval().getStart()))
+				.collect(toList());
+	}
+
 	/**
 	 * Returns the evolution of the tracked value for a specified validity instant.
 	 * The evolution informs you about how knowledge about the value valid at a certain instant evolved.
@@ -84,8 +158,87 @@ public class BitemporalTrace implements Serializable {
 	/**
 	 * Add given {@link Bitemporal} to the trace, manipulating the trace as necessary.
 	 * This is essentially the basic bitemporal data manipulation operation.
+	 * <p>
+	 * The trace keeps an ordered index of the current knowledge, so adding only takes time logarithmic in the size
+	 * of the current knowledge, plus the number of bitemporals affected. The index is built (scanning the trace) on
+	 * first use, and rebuilt when the size of the data collection changes behind the back of the trace. When the
+	 * bitemporals to end were already ended without going through the trace, the trace is scanned instead.
 	 */
 	public void add(Bitemporal newValue) {
+		Instant now = now();
+		if (isIndexed(now)) {
+			if (latestRecordStart.isAfter(now)) {
+				throw new IllegalStateException(
+						"Cannot manipulate bitemporal trace; trace contains data from the future");
+			}
+			boolean added = currentKnowledge.supersede(newValue.copyWith(newValue.getValidityInterval()),
+					Bitemporal::copyWith,
+					bt -> {
+						end(bt);
+						latestRecordEnd = max(latestRecordEnd, bt.getRecordInterval().getEnd());
+					},
+					bt -> {
+						data.add(bt);
+						latestRecordStart = max(latestRecordStart, bt.getRecordInterval().getStart());
+					});
+			if (added) {
+				indexedSize = indexedData.size();
+				return;
+			}
+		}
+		scanAndAdd(newValue);
+		indexedSize = -1;
+	}
+
+	/**
+	 * <i>Forget</i> the {@link Bitemporal} objects valid on given instant as currently known, ending their
+	 * recording interval.
+	 */
+	public void end(Instant validOn) {
+		Instant now = now();
+		if (isIndexed(now) && !latestRecordStart.isAfter(now)) {
+			Bitemporal bt = currentKnowledge.at(validOn);
+			if (bt == null) {
+				return;
+			}
+			if (Timeline.isOpen(bt)) {
+				retire(bt);
+				return;
+			}
+		}
+		// no usable index, or the indexed bitemporal was already ended without going through the trace
+		get(validOn, now).forEach(bt -> end(bt));
+		indexedSize = -1;
+	}
+
+	/**
+	 * End the recording interval of given {@link Bitemporal} of this trace. Subclasses can override this to act
+	 * on bitemporals that are no longer part of the current knowledge.
+	 */
+	protected void end(Bitemporal bt) {
+		bt.end();
+	}
+
+	/**
+	 * Should manipulations use an index of the current knowledge, kept on the Java heap? Subclasses keeping their
+	 * data elsewhere can override this to always scan the trace instead.
+	 */
+	protected boolean isIndexable() {
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		StringWriter buf = new StringWriter();
+		PrintWriter bufWriter = new PrintWriter(buf);
+		data.forEach(bt -> bufWriter.println(bt));
+		return buf.toString();
+	}
+
+	/**
+	 * Add given bitemporal scanning the entire trace, without relying on the index.
+	 */
+	private void scanAndAdd(Bitemporal newValue) {
 		sanityCheck();
 
 		Collection<Bitemporal> toEnd = getHistory(now())
@@ -111,24 +264,65 @@ public class BitemporalTrace implements Serializable {
 					.collect(toList()));
 		}
 
-		toEnd.forEach(bt -> bt.end());
+		toEnd.forEach(bt -> end(bt));
 		toAdd.forEach(bt -> data.add(bt));
 		data.add(newValue.copyWith(newValue.getValidityInterval()));
 	}
 
-	@Override
-	public String toString() {
-		StringWriter buf = new StringWriter();
-		PrintWriter bufWriter = new PrintWriter(buf);
-		data.forEach(bt -> bufWriter.println(bt));
-		return buf.toString();
+	/**
+	 * Can the index be used to manipulate the trace now? This (re)builds the index if needed, only scanning the
+	 * {@link #getData(Instant) data known now}.
+	 */
+	private boolean isIndexed(Instant now) {
+		if (!isIndexable()) {
+			return false;
+		}
+		Collection<Bitemporal> data = getData(now);
+		if (latestRecordStart == null || indexedData != data || indexedSize != data.size()) {
+			Timeline<Bitemporal> timeline = new Timeline<>();
+			latestRecordStart = Instant.MIN;
+			latestRecordEnd = Instant.MIN;
+			for (Bitemporal bt : data) {
+				Interval recordInterval = bt.getRecordInterval();
+				latestRecordStart = max(latestRecordStart, recordInterval.getStart());
+				if (!recordInterval.getEnd().equals(END_OF_TIME)) {
+					latestRecordEnd = max(latestRecordEnd, recordInterval.getEnd());
+				} else if (timeline != null && !timeline.put(bt)) {
+					timeline = null; // overlapping current knowledge, can't index
+				}
+			}
+			currentKnowledge = timeline;
+			indexedData = data;
+			indexedSize = data.size();
+		}
+		// all bitemporals in the index are known now if nothing was recorded after now
+		return currentKnowledge != null && !latestRecordEnd.isAfter(now);
+	}
+
+	/**
+	 * End given bitemporal, which is part of the current knowledge, keeping the index up to date.
+	 */
+	private void retire(Bitemporal bt) {
+		end(bt);
+		currentKnowledge.remove(bt);
+		latestRecordEnd = max(latestRecordEnd, bt.getRecordInterval().getEnd());
+	}
+
+
+	private static Instant max(Instant a, Instant b) {
+		return a.isAfter(b) ? a : b;
+	}
+
+	private static boolean matches(Bitemporal bt, Instant validOn, Instant knownOn) {
+		return bt.getValidityInterval().contains(validOn) && bt.getRecordInterval().contains(knownOn);
 	}
 
 	/**
 	 * Make sure we're not in the past relative to the recording intervals in the trace.
 	 */
 	private void sanityCheck() throws IllegalStateException {
-		if (data.stream().anyMatch(bt -> bt.getRecordInterval().getStart().isAfter(now()))) {
+		Instant now = now();
+		if (getData(now).stream().anyMatch(bt -> bt.getRecordInterval().getStart().isAfter(now))) {
 			throw new IllegalStateException("Cannot manipulate bitemporal trace; trace contains data from the future");
 		}
 	}
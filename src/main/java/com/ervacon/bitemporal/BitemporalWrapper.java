@@ -10,6 +10,7 @@ import static com.ervacon.bitemporal.TimeUtils.now;
 import static java.util.Objects.requireNonNull;
 
 import java.io.Serializable;
+import java.time.Instant;
 import org.threeten.extra.Interval;
 
 /**
@@ -54,6 +55,15 @@ public class BitemporalWrapper<V> implements Bitemporal, Serializable {
 		this.recordInterval = fromNow();
 	}
 
+	/**
+	 * Bitemporally wrap given value, using explicitly specified validity and recording intervals.
+	 */
+	BitemporalWrapper(V value, Interval validityInterval, Interval recordInterval) {
+		this.value = value;
+		this.validityInterval = requireNonNull(validityInterval, "The validity interval is required");
+		this.recordInterval = requireNonNull(recordInterval, "The record interval is required");
+	}
+
 	public Long getId() {
 		return id;
 	}
@@ -82,7 +92,14 @@ public class BitemporalWrapper<V> implements Bitemporal, Serializable {
 
 	@Override
 	public void end() {
-		this.recordInterval = interval(getRecordInterval().getStart(), now());
+		end(now());
+	}
+
+	/**
+	 * End the recording interval of this bitemporal on given instant.
+	 */
+	void end(Instant on) {
+		this.recordInterval = interval(getRecordInterval().getStart(), on);
 	}
 
 	@Override
@@ -0,0 +1,104 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.fromNow;
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import org.threeten.extra.Interval;
+
+/**
+ * {@link BitemporalProperty} implementation for primitive <code>boolean</code> values, using
+ * {@link BooleanBitemporalWrapper}s.
+ * <p>
+ * Besides the generic API, which works with boxed {@link Boolean} values, this class offers primitive accessors and
+ * mutators that never box. The primitive accessors throw a {@link NoSuchElementException} when there is no value,
+ * use {@link #hasValueOn(Instant, Instant)} to check beforehand.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class BooleanBitemporalProperty extends BitemporalProperty<Boolean, BooleanBitemporalWrapper> {
+
+	private static final BooleanAccessor ACCESSOR = new BooleanAccessor();
+
+	public BooleanBitemporalProperty(Collection<? extends Bitemporal> data) {
+		super(data, ACCESSOR);
+	}
+
+	public BooleanBitemporalProperty(BitemporalTrace trace) {
+		super(trace, ACCESSOR);
+	}
+
+	/**
+	 * Returns the value valid {@link TimeUtils#now() now} as currently known.
+	 * @throws NoSuchElementException when there is no such value
+	 */
+	public boolean getAsBoolean() throws NoSuchElementException {
+		Instant now = TimeUtils.now();
+		return getAsBoolean(now, now);
+	}
+
+	/**
+	 * Returns the value valid on specified instant as currently known.
+	 * @throws NoSuchElementException when there is no such value
+	 */
+	public boolean getAsBoolean(Instant validOn) throws NoSuchElementException {
+		return getAsBoolean(validOn, TimeUtils.now());
+	}
+
+	/**
+	 * Returns the value valid on specified instant as known on given instant.
+	 * @throws NoSuchElementException when there is no such value
+	 */
+	public boolean getAsBoolean(Instant validOn, Instant knownOn) throws NoSuchElementException {
+		BooleanBitemporalWrapper bt = get(validOn, knownOn);
+		if (bt == null) {
+			throw new NoSuchElementException("No value valid on " + validOn + " as known on " + knownOn);
+		}
+		return bt.getValue();
+	}
+
+	/**
+	 * Set the value of this bitemporal property. The new value will be valid {@link TimeUtils#fromNow() from now on}.
+	 */
+	public void set(boolean value) {
+		set(value, fromNow());
+	}
+
+	/**
+	 * Set the value of this bitemporal property for specified validity interval.
+	 */
+	public void set(boolean value, Interval validityInterval) {
+		add(new BooleanBitemporalWrapper(value, validityInterval));
+	}
+
+	/**
+	 * Stateless accessor for {@link BooleanBitemporalWrapper}s.
+	 */
+	private static class BooleanAccessor implements ValueAccessor<Boolean, BooleanBitemporalWrapper> {
+
+		@Override
+		public Boolean extractValue(BooleanBitemporalWrapper t) {
+			if (t == null) {
+				return null;
+			} else {
+				return t.getValue();
+			}
+		}
+
+		@Override
+		public BooleanBitemporalWrapper wrapValue(Boolean value, Interval validityInterval) {
+			return new BooleanBitemporalWrapper(requireNonNull(value, "The value is required"), validityInterval);
+		}
+
+		private Object readResolve() {
+			return ACCESSOR;
+		}
+	}
+}
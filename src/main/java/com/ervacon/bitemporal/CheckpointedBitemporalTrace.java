@@ -0,0 +1,243 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.now;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A {@link BitemporalTrace} that periodically takes a checkpoint of its knowledge, speeding up queries about past
+ * knowledge.
+ * <p>
+ * Every given number of manipulations, the trace records a checkpoint: the positions in the data list of all
+ * bitemporals known at that instant. Bitemporals known on some past instant were either known at the latest
+ * checkpoint before that instant, or recorded after that checkpoint but before the next one. Queries as known on a
+ * past instant therefore only look at those bitemporals instead of scanning the entire trace.
+ * <p>
+ * Checkpoints rely on the data list only being appended to by this trace, with the reference time moving forward.
+ * When the size of the data list changes behind the back of the trace, or the trace is manipulated with the
+ * reference time before the latest checkpoint, all checkpoints are dropped and queries scan the entire trace until
+ * new checkpoints have been taken. Querying with the reference time in the past keeps the checkpoints. Checkpoints
+ * are not persisted.
+ * <p>
+ * Results are returned in the order of the data list, exactly as a normal bitemporal trace would.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class CheckpointedBitemporalTrace extends BitemporalTrace {
+
+	private final List<Bitemporal> data;
+	private final int interval;
+
+	private transient List<Checkpoint> checkpoints;
+	private transient int mutations;
+	private transient int expectedSize;
+
+	/**
+	 * Create a new trace working on top of given data list, taking a checkpoint every given number of
+	 * manipulations. The data list needs to support fast random access (e.g. an {@link ArrayList}).
+	 */
+	public CheckpointedBitemporalTrace(List<Bitemporal> data, int interval) {
+		super(data);
+		if (!(data instanceof RandomAccess)) {
+			throw new IllegalArgumentException("Checkpoints require a random access data list");
+		}
+		if (interval < 1) {
+			throw new IllegalArgumentException("The checkpoint interval should be at least 1");
+		}
+		this.data = data;
+		this.interval = interval;
+	}
+
+	/**
+	 * Returns the number of checkpoints currently available.
+	 */
+	public int getCheckpointCount() {
+		return checkpoints().size();
+	}
+
+	@Override
+	public List<Bitemporal> get(Instant validOn, Instant knownOn) {
+		List<Bitemporal> result = new ArrayList<>();
+		scan(validOn, knownOn, result);
+		return result;
+	}
+
+	@Override
+	public Bitemporal find(Instant validOn, Instant knownOn) {
+		return scan(validOn, knownOn, null);
+	}
+
+	@Override
+	public List<Bitemporal> getHistory(Instant knownOn) {
+		List<Bitemporal> result = new ArrayList<>();
+		scan(null, knownOn, result);
+		return result;
+	}
+
+	@Override
+	public void add(Bitemporal newValue) {
+		beforeMutation();
+		super.add(newValue);
+		mutated();
+	}
+
+	@Override
+	public void end(Instant validOn) {
+		beforeMutation();
+		super.end(validOn);
+		mutated();
+	}
+
+	/**
+	 * Take a checkpoint now, independent of the number of manipulations.
+	 */
+	public void checkpoint() {
+		List<Checkpoint> checkpoints = checkpoints();
+		Instant now = now();
+		Checkpoint previous = checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+		if (previous != null && !now.isAfter(previous.instant)) {
+			return; // nothing can have been recorded since the previous checkpoint
+		}
+
+		int[] known = new int[previous == null ? 16 : previous.known.length + interval];
+		int count = 0;
+		if (previous != null) {
+			for (int position : previous.known) {
+				if (data.get(position).getRecordInterval().contains(now)) {
+					known = add(known, count++, position);
+				}
+			}
+		}
+		int from = previous == null ? 0 : previous.position;
+		for (int position = from, size = data.size(); position < size; position++) {
+			if (data.get(position).getRecordInterval().contains(now)) {
+				known = add(known, count++, position);
+			}
+		}
+		checkpoints.add(new Checkpoint(now, data.size(), Arrays.copyOf(known, count)));
+	}
+
+	private void mutated() {
+		expectedSize = data.size();
+		if (++mutations % interval == 0) {
+			checkpoint();
+		}
+	}
+
+	/**
+	 * Drop the checkpoints if the trace is about to be manipulated before the latest checkpoint: bitemporals
+	 * recorded from now on would be missed by queries starting from that checkpoint.
+	 */
+	private void beforeMutation() {
+		List<Checkpoint> checkpoints = checkpoints();
+		if (!checkpoints.isEmpty() && now().isBefore(checkpoints.get(checkpoints.size() - 1).instant)) {
+			checkpoints.clear();
+		}
+	}
+
+	/**
+	 * Returns the checkpoints, dropping them if the data list was modified behind the back of the trace.
+	 */
+	private List<Checkpoint> checkpoints() {
+		if (checkpoints == null) {
+			checkpoints = new ArrayList<>();
+			expectedSize = data.size();
+		}
+		if (expectedSize != data.size()) {
+			checkpoints.clear();
+			expectedSize = data.size();
+		}
+		return checkpoints;
+	}
+
+	/**
+	 * Scan the bitemporals that could be known on given instant, collecting those that are valid on given instant
+	 * (if any) into given result list. If no result list is given, the first match is returned.
+	 */
+	private Bitemporal scan(Instant validOn, Instant knownOn, List<Bitemporal> result) {
+		List<Checkpoint> checkpoints = checkpoints();
+		int index = latest(checkpoints, knownOn);
+		int from = 0;
+		if (index >= 0) {
+			Checkpoint checkpoint = checkpoints.get(index);
+			for (int position : checkpoint.known) {
+				Bitemporal bt = data.get(position);
+				if (matches(bt, validOn, knownOn)) {
+					if (result == null) {
+						return bt;
+					}
+					result.add(bt);
+				}
+			}
+			from = checkpoint.position;
+		}
+		// bitemporals added after the next checkpoint were recorded after the knowledge instant
+		int to = index + 1 < checkpoints.size() ? checkpoints.get(index + 1).position : data.size();
+		for (int position = from; position < to; position++) {
+			Bitemporal bt = data.get(position);
+			if (matches(bt, validOn, knownOn)) {
+				if (result == null) {
+					return bt;
+				}
+				result.add(bt);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the index of the latest checkpoint taken on or before given instant, or -1 if there is none.
+	 */
+	private static int latest(List<Checkpoint> checkpoints, Instant instant) {
+		int low = 0;
+		int high = checkpoints.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (checkpoints.get(mid).instant.isAfter(instant)) {
+				high = mid - 1;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return high;
+	}
+
+	private static boolean matches(Bitemporal bt, Instant validOn, Instant knownOn) {
+		return (validOn == null || bt.getValidityInterval().contains(validOn))
+				&& bt.getRecordInterval().contains(knownOn);
+	}
+
+	private static int[] add(int[] array, int index, int value) {
+		if (index == array.length) {
+			array = Arrays.copyOf(array, Math.max(16, array.length * 2));
+		}
+		array[index] = value;
+		return array;
+	}
+
+	/**
+	 * The bitemporals known at some instant: their positions in the data list, and the size of the data list at
+	 * that instant.
+	 */
+	private static final class Checkpoint {
+
+		private final Instant instant;
+		private final int position;
+		private final int[] known;
+
+		public Checkpoint(Instant instant, int position, int[] known) {
+			this.instant = instant;
+			this.position = position;
+			this.known = known;
+		}
+	}
+}
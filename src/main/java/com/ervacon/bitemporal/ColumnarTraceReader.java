@@ -0,0 +1,177 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.NoSuchElementException;
+import org.threeten.extra.Interval;
+
+/**
+ * Reads bitemporal traces exported by a {@link ColumnarTraceWriter}, row by row. Call {@link #next()} to move to the
+ * next row, and use the getters to access that row.
+ * <p>
+ * Only a single row group is kept in memory, so reading any number of rows takes constant memory.
+ * <p>
+ * Objects of this class are not thread-safe. Close the reader to close the underlying stream.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class ColumnarTraceReader<K, V> implements Closeable {
+
+	private final DataInputStream in;
+	private final ValueCodec<K> keyCodec;
+	private final ValueCodec<V> valueCodec;
+
+	private Object[] keys = new Object[0];
+	private Object[] values = new Object[0];
+	private int[] keyIds = new int[0];
+	private int[] valueIds = new int[0];
+	private final long[][] seconds = new long[4][0];
+	private final int[][] nanos = new int[4][0];
+	private int rows;
+	private int row = -1;
+	private boolean ended;
+
+	/**
+	 * Create a new reader reading from given stream, decoding keys and values using specified codecs.
+	 */
+	public ColumnarTraceReader(InputStream in, ValueCodec<K> keyCodec, ValueCodec<V> valueCodec)
+			throws IOException {
+		requireNonNull(in, "The input stream is required");
+		this.in = new DataInputStream(new BufferedInputStream(in));
+		this.keyCodec = requireNonNull(keyCodec, "The key codec is required");
+		this.valueCodec = requireNonNull(valueCodec, "The value codec is required");
+		if (this.in.readInt() != ColumnarTraceWriter.MAGIC) {
+			throw new IOException("Not a columnar bitemporal trace export");
+		}
+	}
+
+	/**
+	 * Move to the next row.
+	 * @return false if there are no more rows
+	 */
+	public boolean next() throws IOException {
+		if (row + 1 < rows) {
+			row++;
+			return true;
+		}
+		if (ended) {
+			return false;
+		}
+		int count = (int) readVarLong(in);
+		if (count == 0) {
+			ended = true;
+			rows = 0;
+			row = -1;
+			return false;
+		}
+		readGroup(count);
+		row = 0;
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	public K getKey() {
+		return (K) keys[keyIds[current()]];
+	}
+
+	/**
+	 * Returns the value of the current row, which can be null.
+	 */
+	@SuppressWarnings("unchecked")
+	public V getValue() {
+		int id = valueIds[current()];
+		return id == 0 ? null : (V) values[id - 1];
+	}
+
+	public Interval getValidityInterval() {
+		int row = current();
+		return Interval.of(instant(0, row), instant(1, row));
+	}
+
+	public Interval getRecordInterval() {
+		int row = current();
+		return Interval.of(instant(2, row), instant(3, row));
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private int current() {
+		if (row < 0) {
+			throw new NoSuchElementException("No current row; call next() first");
+		}
+		return row;
+	}
+
+	private Instant instant(int column, int row) {
+		return Instant.ofEpochSecond(seconds[column][row], nanos[column][row]);
+	}
+
+	private void readGroup(int count) throws IOException {
+		if (keyIds.length < count) {
+			keyIds = new int[count];
+			valueIds = new int[count];
+			for (int column = 0; column < 4; column++) {
+				seconds[column] = new long[count];
+				nanos[column] = new int[count];
+			}
+		}
+		keys = readDictionary(keyCodec);
+		for (int i = 0; i < count; i++) {
+			keyIds[i] = (int) readVarLong(in);
+		}
+		values = readDictionary(valueCodec);
+		for (int i = 0; i < count; i++) {
+			valueIds[i] = (int) readVarLong(in);
+		}
+		for (int column = 0; column < 4; column++) {
+			long previous = 0;
+			for (int i = 0; i < count; i++) {
+				long delta = readVarLong(in);
+				previous += (delta >>> 1) ^ -(delta & 1);
+				seconds[column][i] = previous;
+			}
+			for (int i = 0; i < count; i++) {
+				nanos[column][i] = (int) readVarLong(in);
+			}
+		}
+		rows = count;
+	}
+
+	private Object[] readDictionary(ValueCodec<?> codec) throws IOException {
+		Object[] entries = new Object[(int) readVarLong(in)];
+		for (int i = 0; i < entries.length; i++) {
+			byte[] bytes = new byte[(int) readVarLong(in)];
+			in.readFully(bytes);
+			entries[i] = codec.decode(bytes);
+		}
+		return entries;
+	}
+
+	/**
+	 * Read a value written by {@link ColumnarTraceWriter#writeVarLong(java.io.DataOutputStream, long)}.
+	 */
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+}
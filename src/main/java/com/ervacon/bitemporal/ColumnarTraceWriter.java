@@ -0,0 +1,219 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.threeten.extra.Interval;
+
+/**
+ * Exports bitemporal traces to a stream, in a compact columnar binary format readable by a
+ * {@link ColumnarTraceReader}. Every exported row holds a key identifying the trace (e.g. an entity id), the value,
+ * and the validity and recording intervals of a bitemporal.
+ * <p>
+ * Rows are written in row groups of a fixed number of rows. In a row group, every column is stored separately:
+ * <ul>
+ * <li>keys and values are dictionary encoded: distinct keys and values are stored once, encoded using a
+ * {@link ValueCodec}, and every row refers to them by number,</li>
+ * <li>the four timestamp columns are delta encoded: every row stores the (zig-zag, variable length encoded)
+ * difference with the previous row, which is typically only a few bytes.</li>
+ * </ul>
+ * Since only a single row group is kept in memory, exporting any number of rows takes constant memory.
+ * <p>
+ * Objects of this class are not thread-safe. Close the writer to write the last row group.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class ColumnarTraceWriter<K, V> implements Closeable {
+
+	static final int MAGIC = 0x42544331; // "BTC1"
+	static final int DEFAULT_GROUP_SIZE = 8192;
+
+	private final DataOutputStream out;
+	private final ValueCodec<K> keyCodec;
+	private final ValueCodec<V> valueCodec;
+	private final int groupSize;
+
+	private final Dictionary keys = new Dictionary();
+	private final Dictionary values = new Dictionary();
+	private final int[] keyIds;
+	private final int[] valueIds;
+	private final long[][] seconds = new long[4][];
+	private final int[][] nanos = new int[4][];
+	private int rows;
+	private long rowCount;
+
+	/**
+	 * Create a new writer writing to given stream, encoding keys and values using specified codecs.
+	 */
+	public ColumnarTraceWriter(OutputStream out, ValueCodec<K> keyCodec, ValueCodec<V> valueCodec)
+			throws IOException {
+		this(out, keyCodec, valueCodec, DEFAULT_GROUP_SIZE);
+	}
+
+	/**
+	 * Create a new writer writing to given stream, encoding keys and values using specified codecs, with given
+	 * number of rows per row group.
+	 */
+	public ColumnarTraceWriter(OutputStream out, ValueCodec<K> keyCodec, ValueCodec<V> valueCodec, int groupSize)
+			throws IOException {
+		requireNonNull(out, "The output stream is required");
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		this.keyCodec = requireNonNull(keyCodec, "The key codec is required");
+		this.valueCodec = requireNonNull(valueCodec, "The value codec is required");
+		if (groupSize < 1) {
+			throw new IllegalArgumentException("The row group size should be at least 1");
+		}
+		this.groupSize = groupSize;
+		this.keyIds = new int[groupSize];
+		this.valueIds = new int[groupSize];
+		for (int i = 0; i < 4; i++) {
+			seconds[i] = new long[groupSize];
+			nanos[i] = new int[groupSize];
+		}
+		this.out.writeInt(MAGIC);
+	}
+
+	/**
+	 * Returns the number of rows written so far.
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Write all bitemporals of given property, current and historic, identified by specified key.
+	 */
+	public void write(K key, BitemporalProperty<V, ?> property) throws IOException {
+		for (Bitemporal bt : property.getTrace().getData()) {
+			write(key, property.extractValue(bt), bt.getValidityInterval(), bt.getRecordInterval());
+		}
+	}
+
+	/**
+	 * Write a single row.
+	 */
+	public void write(K key, V value, Interval validityInterval, Interval recordInterval) throws IOException {
+		keyIds[rows] = keys.id(keyCodec.encode(requireNonNull(key, "The key is required")));
+		valueIds[rows] = value == null ? 0 : values.id(valueCodec.encode(value)) + 1;
+		set(0, validityInterval.getStart());
+		set(1, validityInterval.getEnd());
+		set(2, recordInterval.getStart());
+		set(3, recordInterval.getEnd());
+		rowCount++;
+		if (++rows == groupSize) {
+			writeGroup();
+		}
+	}
+
+	/**
+	 * Write the rows buffered in the current row group, and flush the underlying stream.
+	 */
+	public void flush() throws IOException {
+		if (rows > 0) {
+			writeGroup();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write the last row group and the end marker, and close the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+		writeVarLong(out, 0);
+		out.close();
+	}
+
+	private void set(int column, Instant instant) {
+		seconds[column][rows] = instant.getEpochSecond();
+		nanos[column][rows] = instant.getNano();
+	}
+
+	private void writeGroup() throws IOException {
+		writeVarLong(out, rows);
+		keys.writeTo(out);
+		for (int i = 0; i < rows; i++) {
+			writeVarLong(out, keyIds[i]);
+		}
+		values.writeTo(out);
+		for (int i = 0; i < rows; i++) {
+			writeVarLong(out, valueIds[i]);
+		}
+		for (int column = 0; column < 4; column++) {
+			long previous = 0;
+			for (int i = 0; i < rows; i++) {
+				writeVarLong(out, zigZag(seconds[column][i] - previous));
+				previous = seconds[column][i];
+			}
+			for (int i = 0; i < rows; i++) {
+				writeVarLong(out, nanos[column][i]);
+			}
+		}
+		keys.clear();
+		values.clear();
+		rows = 0;
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Write given (unsigned) value using 7 bits per byte, the high bit indicating more bytes follow.
+	 */
+	static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * The distinct encoded values of a row group, numbered in order of appearance.
+	 */
+	private static class Dictionary {
+
+		private final Map<ByteBuffer, Integer> ids = new HashMap<>();
+		private final List<byte[]> entries = new ArrayList<>();
+
+		public int id(byte[] bytes) {
+			Integer id = ids.get(ByteBuffer.wrap(bytes));
+			if (id == null) {
+				id = entries.size();
+				ids.put(ByteBuffer.wrap(bytes), id);
+				entries.add(bytes);
+			}
+			return id;
+		}
+
+		public void writeTo(DataOutputStream out) throws IOException {
+			writeVarLong(out, entries.size());
+			for (byte[] entry : entries) {
+				writeVarLong(out, entry.length);
+				out.write(entry);
+			}
+		}
+
+		public void clear() {
+			ids.clear();
+			entries.clear();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.fromNow;
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.function.ToDoubleFunction;
+import org.threeten.extra.Interval;
+
+/**
+ * {@link BitemporalProperty} implementation for primitive <code>double</code> values, using
+ * {@link DoubleBitemporalWrapper}s.
+ * <p>
+ * Besides the generic API, which works with boxed {@link Double} values, this class offers primitive accessors and
+ * mutators that never box. The primitive accessors throw a {@link NoSuchElementException} when there is no value,
+ * use {@link #hasValueOn(Instant, Instant)} to check beforehand.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class DoubleBitemporalProperty extends BitemporalProperty<Double, DoubleBitemporalWrapper> {
+
+	private static final DoubleAccessor ACCESSOR = new DoubleAccessor();
+	private static final ToDoubleFunction<Double> VALUE = Double::doubleValue;
+
+	public DoubleBitemporalProperty(Collection<? extends Bitemporal> data) {
+		super(data, ACCESSOR);
+	}
+
+	public DoubleBitemporalProperty(BitemporalTrace trace) {
+		super(trace, ACCESSOR);
+	}
+
+	/**
+	 * Returns the value valid {@link TimeUtils#now() now} as currently known.
+	 * @throws NoSuchElementException when there is no such value
+	 */
+	public double getAsDouble() throws NoSuchElementException {
+		Instant now = TimeUtils.now();
+		return getAsDouble(now, now);
+	}
+
+	/**
+	 * Returns the value valid on specified instant as currently known.
+	 * @throws NoSuchElementException when there is no such value
+	 */
+	public double getAsDouble(Instant validOn) throws NoSuchElementException {
+		return getAsDouble(validOn, TimeUtils.now());
+	}
+
+	/**
+	 * Returns the value valid on specified instant as known on given instant.
+	 * @throws NoSuchElementException when there is no such value
+	 */
+	public double getAsDouble(Instant validOn, Instant knownOn) throws NoSuchElementException {
+		DoubleBitemporalWrapper bt = get(validOn, knownOn);
+		if (bt == null) {
+			throw new NoSuchElementException("No value valid on " + validOn + " as known on " + knownOn);
+		}
+		return bt.getValue();
+	}
+
+	/**
+	 * Set the value of this bitemporal property. The new value will be valid {@link TimeUtils#fromNow() from now on}.
+	 */
+	public void set(double value) {
+		set(value, fromNow());
+	}
+
+	/**
+	 * Set the value of this bitemporal property for specified validity interval.
+	 */
+	public void set(double value, Interval validityInterval) {
+		add(new DoubleBitemporalWrapper(value, validityInterval));
+	}
+
+	/**
+	 * Returns the time-weighted aggregate of the values valid during given validity range as currently known.
+	 */
+	public TemporalAggregate aggregate(Interval range) {
+		return aggregate(range, TimeUtils.now());
+	}
+
+	/**
+	 * Returns the time-weighted aggregate of the values valid during given validity range as known on specified
+	 * instant.
+	 * @see #aggregate(Interval, Instant, ToDoubleFunction)
+	 */
+	public TemporalAggregate aggregate(Interval range, Instant knownOn) {
+		return aggregate(range, knownOn, VALUE);
+	}
+
+	/**
+	 * Stateless accessor for {@link DoubleBitemporalWrapper}s.
+	 */
+	private static class DoubleAccessor implements ValueAccessor<Double, DoubleBitemporalWrapper> {
+
+		@Override
+		public Double extractValue(DoubleBitemporalWrapper t) {
+			if (t == null) {
+				return null;
+			} else {
+				return t.getValue();
+			}
+		}
+
+		@Override
+		public DoubleBitemporalWrapper wrapValue(Double value, Interval validityInterval) {
+			return new DoubleBitemporalWrapper(requireNonNull(value, "The value is required"), validityInterval);
+		}
+
+		private Object readResolve() {
+			return ACCESSOR;
+		}
+	}
+}
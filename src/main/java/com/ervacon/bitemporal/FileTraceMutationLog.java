@@ -0,0 +1,155 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link TraceMutationLog} implementation storing mutations in a file, which can be shipped to replicas or shared
+ * with other processes. Every mutation is stored as its length followed by its serialized form, so the mutations
+ * (and the bitemporals they add) need to be serializable.
+ * <p>
+ * A log file should only have a single writer, but any number of readers, possibly in other processes. Readers
+ * discover mutations appended by the writer as they go, ignoring a mutation that is only partially written.
+ * <p>
+ * Objects of this class are thread-safe. Close the log to release the file.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class FileTraceMutationLog implements TraceMutationLog, Closeable {
+
+	private static final ValueCodec<TraceMutation> CODEC = ValueCodec.serialization();
+
+	private final Path file;
+	private final List<Long> offsets = new ArrayList<>();
+	private long scannedOffset;
+	private FileChannel channel;
+	private DataOutputStream out;
+
+	/**
+	 * Create a new log using given file. If the file already exists, mutations are appended to it, after dropping a
+	 * partially written mutation at its end (e.g. left behind by a writer that died).
+	 */
+	public FileTraceMutationLog(Path file) {
+		this.file = requireNonNull(file, "The log file is required");
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	@Override
+	public synchronized void append(TraceMutation mutation) {
+		byte[] bytes = CODEC.encode(requireNonNull(mutation, "The mutation is required"));
+		try {
+			if (out == null) {
+				scan();
+				FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				try {
+					channel.truncate(scannedOffset);
+					channel.position(scannedOffset);
+				} catch (IOException e) {
+					channel.close();
+					throw e;
+				}
+				this.channel = channel;
+				out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			}
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			out.flush();
+		} catch (IOException e) {
+			if (out != null) {
+				// the next append rescans the file, dropping what was written of this mutation; closing the channel
+				// rather than the stream discards what is still buffered
+				try {
+					channel.close();
+				} catch (IOException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+				channel = null;
+				out = null;
+			}
+			throw new UncheckedIOException("Cannot append to mutation log " + file, e);
+		}
+		offsets.add(scannedOffset);
+		scannedOffset += Integer.BYTES + bytes.length;
+	}
+
+	@Override
+	public synchronized long getEndPosition() {
+		scan();
+		return offsets.size();
+	}
+
+	@Override
+	public synchronized List<TraceMutation> read(long position, int maxCount) {
+		scan();
+		if (position >= offsets.size()) {
+			return Collections.emptyList();
+		}
+		int count = (int) Math.min(maxCount, offsets.size() - position);
+		List<TraceMutation> result = new ArrayList<>(count);
+		try (RandomAccessFile in = new RandomAccessFile(file.toFile(), "r")) {
+			in.seek(offsets.get((int) position));
+			for (int i = 0; i < count; i++) {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				result.add(CODEC.decode(bytes));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot read mutation log " + file, e);
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			channel = null;
+			out = null;
+		}
+	}
+
+	/**
+	 * Discover the complete mutations written to the file since the last scan.
+	 */
+	private void scan() {
+		if (out != null || !Files.exists(file)) {
+			return; // we're the writer: we know all mutations
+		}
+		try (RandomAccessFile in = new RandomAccessFile(file.toFile(), "r")) {
+			long length = in.length();
+			while (scannedOffset + Integer.BYTES <= length) {
+				in.seek(scannedOffset);
+				long next = scannedOffset + Integer.BYTES + in.readInt();
+				if (next > length) {
+					break; // only partially written
+				}
+				offsets.add(scannedOffset);
+				scannedOffset = next;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot read mutation log " + file, e);
+		}
+	}
+}
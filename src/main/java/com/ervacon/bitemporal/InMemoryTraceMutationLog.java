@@ -0,0 +1,41 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link TraceMutationLog} implementation keeping all mutations in memory, useful to replicate traces within a
+ * single process.
+ * <p>
+ * Objects of this class are thread-safe.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class InMemoryTraceMutationLog implements TraceMutationLog {
+
+	private final List<TraceMutation> mutations = new ArrayList<>();
+
+	@Override
+	public synchronized void append(TraceMutation mutation) {
+		mutations.add(requireNonNull(mutation, "The mutation is required"));
+	}
+
+	@Override
+	public synchronized long getEndPosition() {
+		return mutations.size();
+	}
+
+	@Override
+	public synchronized List<TraceMutation> read(long position, int maxCount) {
+		int from = (int) Math.min(position, mutations.size());
+		int to = (int) Math.min((long) from + maxCount, mutations.size());
+		return new ArrayList<>(mutations.subList(from, to));
+	}
+}
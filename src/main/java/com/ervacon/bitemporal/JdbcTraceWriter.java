@@ -0,0 +1,201 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.END_OF_TIME;
+import static java.util.Objects.requireNonNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import org.threeten.extra.Interval;
+
+/**
+ * A {@link TraceWriter} writing changes to a database table using JDBC batches, in a single transaction.
+ * <p>
+ * The table has a column identifying the owner of the trace, columns for the value and the columns
+ * <code>validityStart</code>, <code>validityEnd</code>, <code>recordStart</code> and <code>recordEnd</code> holding
+ * the validity and recording intervals as timestamps. Updated rows are identified by their id when the writer knows
+ * it, and by their owner, validity interval and recording start otherwise. They should still be known: unless every
+ * update changes exactly one row, writing fails and nothing is written. Updates are executed before inserts, so an
+ * update never matches a row inserted by the same batch. When the JDBC driver doesn't report the row counts of
+ * batched updates, the writer rolls back and executes updates one by one from then on.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class JdbcTraceWriter implements TraceWriter {
+
+	private final DataSource dataSource;
+	private final String table;
+	private final Function<Bitemporal, Object[]> values;
+	private final Function<Bitemporal, Object> rowIds;
+	private final String insertSql;
+	private final String updateSql;
+	private final String updateByIdSql;
+
+	// cleared once the driver turns out not to report the row counts of batched updates
+	private volatile boolean batchUpdates = true;
+
+	/**
+	 * Create a new writer writing to given table. The owner of a trace is stored in specified column, and the values
+	 * returned by given function for a bitemporal are stored in the value columns, in order.
+	 */
+	public JdbcTraceWriter(DataSource dataSource, String table, String ownerColumn, List<String> valueColumns,
+			Function<Bitemporal, Object[]> values) {
+		this(dataSource, table, ownerColumn, valueColumns, values, null, bt -> null);
+	}
+
+	/**
+	 * Create a new writer writing to given table. The owner of a trace is stored in specified column, and the values
+	 * returned by given function for a bitemporal are stored in the value columns, in order. Rows are updated using
+	 * the id returned by given function, stored in specified id column. When the function returns <code>null</code>
+	 * (e.g. for bitemporals inserted by this writer, getting their id from the database), the row is identified by
+	 * its owner, validity interval and recording start.
+	 */
+	public JdbcTraceWriter(DataSource dataSource, String table, String ownerColumn, List<String> valueColumns,
+			Function<Bitemporal, Object[]> values, String idColumn, Function<Bitemporal, Object> rowIds) {
+		this.dataSource = requireNonNull(dataSource, "The data source is required");
+		this.table = requireNonNull(table, "The table is required");
+		this.values = requireNonNull(values, "The value function is required");
+		this.rowIds = requireNonNull(rowIds, "The row id function is required");
+		List<String> columns = new ArrayList<>();
+		columns.add(requireNonNull(ownerColumn, "The owner column is required"));
+		columns.addAll(valueColumns);
+		Collections.addAll(columns, "validityStart", "validityEnd", "recordStart", "recordEnd");
+		this.insertSql = "insert into " + table + " (" + String.join(", ", columns) + ") values ("
+				+ columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ")";
+		this.updateSql = "update " + table + " set recordEnd = ? where " + ownerColumn + " = ?"
+				+ " and validityStart = ? and validityEnd = ? and recordStart = ? and recordEnd = ?";
+		this.updateByIdSql = idColumn == null ? null
+				: "update " + table + " set recordEnd = ? where " + idColumn + " = ? and recordEnd = ?";
+	}
+
+	@Override
+	public void write(List<TraceChange> changes) throws SQLException {
+		if (!write(changes, batchUpdates)) {
+			batchUpdates = false;
+			write(changes, false);
+		}
+	}
+
+	/**
+	 * Write given changes in a single transaction, batching updates if requested.
+	 * @return false, after rolling back, when the row counts of batched updates are unknown
+	 */
+	private boolean write(List<TraceChange> changes, boolean batchUpdates) throws SQLException {
+		try (Connection connection = dataSource.getConnection()) {
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try (PreparedStatement insert = connection.prepareStatement(insertSql);
+					PreparedStatement update = connection.prepareStatement(updateSql);
+					PreparedStatement updateById =
+							updateByIdSql == null ? null : connection.prepareStatement(updateByIdSql)) {
+				int inserts = 0;
+				int updates = 0;
+				int updatesById = 0;
+				for (TraceChange change : changes) {
+					Object rowId = change.getType() == TraceChange.Type.UPDATE && updateById != null
+							? rowIds.apply(change.getBitemporal()) : null;
+					PreparedStatement statement;
+					if (change.getType() == TraceChange.Type.INSERT) {
+						bindInsert(insert, change);
+						insert.addBatch();
+						inserts++;
+						continue;
+					} else if (rowId != null) {
+						bindUpdateById(updateById, change, rowId);
+						statement = updateById;
+						updatesById++;
+					} else {
+						bindUpdate(update, change);
+						statement = update;
+						updates++;
+					}
+					if (batchUpdates) {
+						statement.addBatch();
+					} else {
+						checkCount(statement.executeUpdate());
+					}
+				}
+				if (batchUpdates && (updatesById > 0 && !executeUpdates(updateById)
+						|| updates > 0 && !executeUpdates(update))) {
+					connection.rollback();
+					return false;
+				}
+				if (inserts > 0) {
+					insert.executeBatch();
+				}
+				connection.commit();
+				return true;
+			} catch (SQLException | RuntimeException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		}
+	}
+
+	/**
+	 * Execute given batch of updates, checking that every update changed exactly one row.
+	 * @return false if the driver didn't report the row counts
+	 */
+	private boolean executeUpdates(PreparedStatement statement) throws SQLException {
+		boolean known = true;
+		for (int count : statement.executeBatch()) {
+			if (count == Statement.SUCCESS_NO_INFO) {
+				known = false;
+			} else {
+				checkCount(count);
+			}
+		}
+		return known;
+	}
+
+	private void checkCount(int count) throws SQLException {
+		if (count != 1) {
+			throw new SQLException("Cannot update bitemporal; expected a single known row in " + table
+					+ " but the update changed " + count + " rows");
+		}
+	}
+
+	private void bindInsert(PreparedStatement statement, TraceChange change) throws SQLException {
+		int index = 1;
+		statement.setObject(index++, change.getOwner());
+		for (Object value : values.apply(change.getBitemporal())) {
+			statement.setObject(index++, value);
+		}
+		Interval validity = change.getBitemporal().getValidityInterval();
+		statement.setTimestamp(index++, Timestamp.from(validity.getStart()));
+		statement.setTimestamp(index++, Timestamp.from(validity.getEnd()));
+		statement.setTimestamp(index++, Timestamp.from(change.getRecordInterval().getStart()));
+		statement.setTimestamp(index++, Timestamp.from(change.getRecordInterval().getEnd()));
+	}
+
+	private void bindUpdate(PreparedStatement statement, TraceChange change) throws SQLException {
+		Interval validity = change.getBitemporal().getValidityInterval();
+		statement.setTimestamp(1, Timestamp.from(change.getRecordInterval().getEnd()));
+		statement.setObject(2, change.getOwner());
+		statement.setTimestamp(3, Timestamp.from(validity.getStart()));
+		statement.setTimestamp(4, Timestamp.from(validity.getEnd()));
+		statement.setTimestamp(5, Timestamp.from(change.getRecordInterval().getStart()));
+		statement.setTimestamp(6, Timestamp.from(END_OF_TIME));
+	}
+
+	private void bindUpdateById(PreparedStatement statement, TraceChange change, Object rowId) throws SQLException {
+		statement.setTimestamp(1, Timestamp.from(change.getRecordInterval().getEnd()));
+		statement.setObject(2, rowId);
+		statement.setTimestamp(3, Timestamp.from(END_OF_TIME));
+	}
+}
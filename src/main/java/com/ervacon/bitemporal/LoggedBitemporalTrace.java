@@ -0,0 +1,52 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * A {@link BitemporalTrace} recording all manipulations in a {@link TraceMutationLog}, so they can be applied to
+ * replicas of the trace using a {@link TraceFollower}.
+ * <p>
+ * Every manipulation is done with the reference time fixed to the {@link TimeUtils#now() current time}, and logged
+ * with that time once it succeeded. Replicas applying the log therefore end up with exactly the same data, recording
+ * intervals included.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class LoggedBitemporalTrace extends BitemporalTrace {
+
+	private final TraceMutationLog log;
+
+	/**
+	 * Create a new trace working on top of given data collection, logging manipulations to specified log.
+	 */
+	public LoggedBitemporalTrace(Collection<Bitemporal> data, TraceMutationLog log) {
+		super(data);
+		this.log = requireNonNull(log, "The mutation log is required");
+	}
+
+	public TraceMutationLog getLog() {
+		return log;
+	}
+
+	@Override
+	public void add(Bitemporal newValue) {
+		Instant now = TimeUtils.now();
+		TimeUtils.runAt(now, () -> super.add(newValue));
+		log.append(TraceMutation.add(now, newValue));
+	}
+
+	@Override
+	public void end(Instant validOn) {
+		Instant now = TimeUtils.now();
+		TimeUtils.runAt(now, () -> super.end(validOn));
+		log.append(TraceMutation.end(now, validOn));
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.fromNow;
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.function.ToDoubleFunction;
+import org.threeten.extra.Interval;
+
+/**
+ * {@link BitemporalProperty} implementation for primitive <code>long</code> values, using
+ * {@link LongBitemporalWrapper}s.
+ * <p>
+ * Besides the generic API, which works with boxed {@link Long} values, this class offers primitive accessors and
+ * mutators that never box. The primitive accessors throw a {@link NoSuchElementException} when there is no value,
+ * use {@link #hasValueOn(Instant, Instant)} to check beforehand.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class LongBitemporalProperty extends BitemporalProperty<Long, LongBitemporalWrapper> {
+
+	private static final LongAccessor ACCESSOR = new LongAccessor();
+	private static final ToDoubleFunction<Long> VALUE = Long::doubleValue;
+
+	public LongBitemporalProperty(Collection<? extends Bitemporal> data) {
+		super(data, ACCESSOR);
+	}
+
+	public LongBitemporalProperty(BitemporalTrace trace) {
+		super(trace, ACCESSOR);
+	}
+
+	/**
+	 * Returns the value valid {@link TimeUtils#now() now} as currently known.
+	 * @throws NoSuchElementException when there is no such value
+	 */
+	public long getAsLong() throws NoSuchElementException {
+		Instant now = TimeUtils.now();
+		return getAsLong(now, now);
+	}
+
+	/**
+	 * Returns the value valid on specified instant as currently known.
+	 * @throws NoSuchElementException when there is no such value
+	 */
+	public long getAsLong(Instant validOn) throws NoSuchElementException {
+		return getAsLong(validOn, TimeUtils.now());
+	}
+
+	/**
+	 * Returns the value valid on specified instant as known on given instant.
+	 * @throws NoSuchElementException when there is no such value
+	 */
+	public long getAsLong(Instant validOn, Instant knownOn) throws NoSuchElementException {
+		LongBitemporalWrapper bt = get(validOn, knownOn);
+		if (bt == null) {
+			throw new NoSuchElementException("No value valid on " + validOn + " as known on " + knownOn);
+		}
+		return bt.getValue();
+	}
+
+	/**
+	 * Set the value of this bitemporal property. The new value will be valid {@link TimeUtils#fromNow() from now on}.
+	 */
+	public void set(long value) {
+		set(value, fromNow());
+	}
+
+	/**
+	 * Set the value of this bitemporal property for specified validity interval.
+	 */
+	public void set(long value, Interval validityInterval) {
+		add(new LongBitemporalWrapper(value, validityInterval));
+	}
+
+	/**
+	 * Returns the time-weighted aggregate of the values valid during given validity range as currently known.
+	 */
+	public TemporalAggregate aggregate(Interval range) {
+		return aggregate(range, TimeUtils.now());
+	}
+
+	/**
+	 * Returns the time-weighted aggregate of the values valid during given validity range as known on specified
+	 * instant.
+	 * @see #aggregate(Interval, Instant, ToDoubleFunction)
+	 */
+	public TemporalAggregate aggregate(Interval range, Instant knownOn) {
+		return aggregate(range, knownOn, VALUE);
+	}
+
+	/**
+	 * Stateless accessor for {@link LongBitemporalWrapper}s.
+	 */
+	private static class LongAccessor implements ValueAccessor<Long, LongBitemporalWrapper> {
+
+		@Override
+		public Long extractValue(LongBitemporalWrapper t) {
+			if (t == null) {
+				return null;
+			} else {
+				return t.getValue();
+			}
+		}
+
+		@Override
+		public LongBitemporalWrapper wrapValue(Long value, Interval validityInterval) {
+			return new LongBitemporalWrapper(requireNonNull(value, "The value is required"), validityInterval);
+		}
+
+		private Object readResolve() {
+			return ACCESSOR;
+		}
+	}
+}
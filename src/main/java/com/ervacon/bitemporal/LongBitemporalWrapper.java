@@ -0,0 +1,96 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.fromNow;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+import static com.ervacon.bitemporal.TimeUtils.now;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import org.threeten.extra.Interval;
+
+/**
+ * Decorates a primitive <code>long</code> value with bitemporal information. This is the primitive specialization
+ * of {@link BitemporalWrapper}: the value is stored unboxed, avoiding boxing when reading or writing it through
+ * a {@link LongBitemporalProperty}.
+ * <p>
+ * Instances of this class are serializable.
+ * <p>
+ * Objects of this class are not thread-safe.
+ *
+ * @see BitemporalWrapper
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class LongBitemporalWrapper implements Bitemporal, Serializable {
+
+	private Long id;
+	private long value;
+	private Interval validityInterval;
+	private Interval recordInterval;
+
+	/**
+	 * For Hibernate.
+	 */
+	@SuppressWarnings("unused")
+	private LongBitemporalWrapper() {
+	}
+
+	/**
+	 * Bitemporally wrap given value. Validity will be as specified, and the recording interval will
+	 * be {@link TimeUtils#fromNow() from now on}.
+	 * @param value the value to wrap
+	 * @param validityInterval the validity of the value
+	 */
+	public LongBitemporalWrapper(long value, Interval validityInterval) {
+		this.value = value;
+		this.validityInterval = requireNonNull(validityInterval, "The validity interval is required");
+		this.recordInterval = fromNow();
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	@SuppressWarnings("unused")
+	private void setId(Long id) {
+		this.id = id;
+	}
+
+	/**
+	 * Returns the wrapped value.
+	 */
+	public long getValue() {
+		return value;
+	}
+
+	@Override
+	public Interval getValidityInterval() {
+		return validityInterval;
+	}
+
+	@Override
+	public Interval getRecordInterval() {
+		return recordInterval;
+	}
+
+	@Override
+	public void end() {
+		this.recordInterval = interval(getRecordInterval().getStart(), now());
+	}
+
+	@Override
+	public Bitemporal copyWith(Interval validityInterval) {
+		// force record interval to be 'from now'
+		return new LongBitemporalWrapper(getValue(), validityInterval);
+	}
+
+	@Override
+	public String toString() {
+		return getValidityInterval() + "  ~  " + getRecordInterval() + "  ~  " + getValue();
+	}
+}
@@ -0,0 +1,436 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.END_OF_TIME;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+import static com.ervacon.bitemporal.TimeUtils.now;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.threeten.extra.Interval;
+
+/**
+ * A {@link BitemporalTrace} that keeps its data outside of the Java heap, in direct {@link ByteBuffer}s. This makes
+ * it possible to hold traces with millions of versions without burdening the garbage collector: the heap only holds
+ * a handful of large buffers, whatever the size of the trace.
+ * <p>
+ * The temporal information is stored in columns, one row per bitemporal, and values are serialized using a
+ * {@link ValueCodec}. Queries scan the temporal columns directly and only materialize the matching bitemporals,
+ * as light-weight {@link Version} views on top of the off-heap data. Ending such a view updates the off-heap data.
+ * <p>
+ * Values can be added to the trace as {@link BitemporalWrapper}s or {@link Version}s, and the trace supports
+ * exactly the same queries and manipulations as a normal bitemporal trace. Use {@link #property()} to get a
+ * high-level {@link BitemporalProperty} API on top of an off-heap trace. Manipulations scan the temporal columns,
+ * rather than keeping an index of the current knowledge on the heap, and only materialize the bitemporals they end
+ * or split.
+ * <p>
+ * The off-heap memory is released when the trace is garbage collected. Off-heap traces are not serializable.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class OffHeapBitemporalTrace<V> extends BitemporalTrace {
+
+	private final Columns<V> columns;
+
+	/**
+	 * Create a new, empty off-heap trace using given codec to store values.
+	 */
+	public OffHeapBitemporalTrace(ValueCodec<V> codec) {
+		this(new Columns<>(requireNonNull(codec, "The value codec is required")));
+	}
+
+	private OffHeapBitemporalTrace(Columns<V> columns) {
+		super(columns);
+		this.columns = columns;
+	}
+
+	/**
+	 * Returns a bitemporal property working on top of this trace.
+	 */
+	public BitemporalProperty<V, Bitemporal> property() {
+		return new BitemporalProperty<>(this, new VersionAccessor<>());
+	}
+
+	@Override
+	public List<Bitemporal> get(Instant validOn, Instant knownOn) {
+		List<Bitemporal> result = new ArrayList<>();
+		for (int row = 0, size = columns.size(); row < size; row++) {
+			if (columns.contains(row, Columns.VALIDITY_START, validOn)
+					&& columns.contains(row, Columns.RECORD_START, knownOn)) {
+				result.add(columns.version(row));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Bitemporal find(Instant validOn, Instant knownOn) {
+		for (int row = 0, size = columns.size(); row < size; row++) {
+			if (columns.contains(row, Columns.VALIDITY_START, validOn)
+					&& columns.contains(row, Columns.RECORD_START, knownOn)) {
+				return columns.version(row);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public List<Bitemporal> getHistory(Instant knownOn) {
+		List<Bitemporal> result = new ArrayList<>();
+		for (int row = 0, size = columns.size(); row < size; row++) {
+			if (columns.contains(row, Columns.RECORD_START, knownOn)) {
+				result.add(columns.version(row));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public List<Bitemporal> getEvolution(Instant validOn) {
+		List<Bitemporal> result = new ArrayList<>();
+		for (int row = 0, size = columns.size(); row < size; row++) {
+			if (columns.contains(row, Columns.VALIDITY_START, validOn)) {
+				result.add(columns.version(row));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void add(Bitemporal newValue) {
+		Instant now = now();
+		Interval validity = newValue.getValidityInterval();
+		Instant start = validity.getStart();
+		Instant end = validity.getEnd();
+
+		// the current bitemporals overlapping with the new value, which are ended
+		int[] overlapping = new int[4];
+		int count = 0;
+		for (int row = 0, size = columns.size(); row < size; row++) {
+			if (columns.compare(row, Columns.RECORD_START, now) > 0) {
+				throw new IllegalStateException(
+						"Cannot manipulate bitemporal trace; trace contains data from the future");
+			}
+			if (columns.contains(row, Columns.RECORD_START, now) && columns.overlaps(row, validity)) {
+				if (count == overlapping.length) {
+					overlapping = Arrays.copyOf(overlapping, count * 2);
+				}
+				overlapping[count++] = row;
+			}
+		}
+
+		// the parts of the overlapping bitemporals before and after the new value remain valid
+		List<Bitemporal> toAdd = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			int row = overlapping[i];
+			if (columns.contains(row, Columns.VALIDITY_START, start)
+					&& columns.compare(row, Columns.VALIDITY_START, start) < 0) {
+				toAdd.add(columns.version(row).copyWith(interval(columns.instant(row, Columns.VALIDITY_START), start)));
+			}
+		}
+		if (!end.equals(END_OF_TIME)) {
+			for (int i = 0; i < count; i++) {
+				int row = overlapping[i];
+				if (columns.contains(row, Columns.VALIDITY_START, end)
+						&& columns.compare(row, Columns.VALIDITY_START, end) < 0) {
+					toAdd.add(columns.version(row).copyWith(interval(end, columns.instant(row, Columns.VALIDITY_END))));
+				}
+			}
+		}
+
+		for (int i = 0; i < count; i++) {
+			end(columns.version(overlapping[i]));
+		}
+		toAdd.forEach(columns::add);
+		columns.add(newValue.copyWith(validity));
+	}
+
+	@Override
+	protected boolean isIndexable() {
+		return false; // an index would hold a view on every current bitemporal on the heap
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		throw new NotSerializableException("Off-heap bitemporal traces are not serializable");
+	}
+
+	/**
+	 * A view on a bitemporal stored in an off-heap trace. Views are created on demand and are not cached:
+	 * two views on the same bitemporal are {@link #equals(Object) equal}.
+	 */
+	public static final class Version<V> implements Bitemporal {
+
+		private final Columns<V> columns;
+		private final int row;
+
+		private Version(Columns<V> columns, int row) {
+			this.columns = columns;
+			this.row = row;
+		}
+
+		/**
+		 * Returns the value of this bitemporal, decoding it from the off-heap data.
+		 */
+		public V getValue() {
+			return columns.value(row);
+		}
+
+		@Override
+		public Interval getValidityInterval() {
+			return interval(
+					columns.instant(row, Columns.VALIDITY_START), columns.instant(row, Columns.VALIDITY_END));
+		}
+
+		@Override
+		public Interval getRecordInterval() {
+			return interval(columns.instant(row, Columns.RECORD_START), columns.instant(row, Columns.RECORD_END));
+		}
+
+		@Override
+		public void end() {
+			columns.putInstant(row, Columns.RECORD_END, now());
+		}
+
+		@Override
+		public Bitemporal copyWith(Interval validityInterval) {
+			// force record interval to be 'from now'
+			return new BitemporalWrapper<>(getValue(), validityInterval);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (obj instanceof Version) {
+				Version<?> other = (Version<?>) obj;
+				return other.columns == this.columns && other.row == this.row;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(columns) * 31 + row;
+		}
+
+		@Override
+		public String toString() {
+			return getValidityInterval() + "  ~  " + getRecordInterval() + "  ~  " + getValue();
+		}
+	}
+
+	/**
+	 * Accessor for the values of an off-heap trace.
+	 */
+	private static class VersionAccessor<V> implements ValueAccessor<V, Bitemporal> {
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V extractValue(Bitemporal t) {
+			if (t == null) {
+				return null;
+			} else if (t instanceof BitemporalWrapper) {
+				return ((BitemporalWrapper<V>) t).getValue(); // not yet stored in the trace
+			} else {
+				return ((Version<V>) t).getValue();
+			}
+		}
+
+		@Override
+		public Bitemporal wrapValue(V value, Interval validityInterval) {
+			return new BitemporalWrapper<>(value, validityInterval);
+		}
+	}
+
+	/**
+	 * The off-heap storage: fixed size rows holding the temporal columns and a reference to the encoded value,
+	 * and separate chunks holding the encoded values themselves. Rows are never removed.
+	 */
+	private static class Columns<V> extends AbstractCollection<Bitemporal> {
+
+		// an instant is stored as epoch seconds (long) followed by nanos (int)
+		private static final int INSTANT_BYTES = 12;
+		static final int VALIDITY_START = 0;
+		static final int VALIDITY_END = VALIDITY_START + INSTANT_BYTES;
+		static final int RECORD_START = VALIDITY_END + INSTANT_BYTES;
+		static final int RECORD_END = RECORD_START + INSTANT_BYTES;
+		private static final int VALUE_CHUNK = RECORD_END + INSTANT_BYTES;
+		private static final int VALUE_OFFSET = VALUE_CHUNK + 4;
+		private static final int VALUE_LENGTH = VALUE_OFFSET + 4;
+		private static final int ROW_BYTES = VALUE_LENGTH + 4;
+
+		private static final int ROWS_PER_CHUNK_SHIFT = 16;
+		private static final int ROWS_PER_CHUNK = 1 << ROWS_PER_CHUNK_SHIFT;
+		private static final int VALUE_CHUNK_BYTES = 16 * 1024 * 1024;
+
+		// a value length of -1 indicates a null value
+		private static final int NULL_VALUE = -1;
+
+		private final ValueCodec<V> codec;
+		private final List<ByteBuffer> rowChunks = new ArrayList<>();
+		private final List<ByteBuffer> valueChunks = new ArrayList<>();
+		private int size;
+		private int valueChunkUsed;
+
+		public Columns(ValueCodec<V> codec) {
+			this.codec = codec;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<Bitemporal> iterator() {
+			return new Iterator<Bitemporal>() {
+				private int row;
+
+				@Override
+				public boolean hasNext() {
+					return row < size;
+				}
+
+				@Override
+				public Bitemporal next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return version(row++);
+				}
+			};
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean add(Bitemporal bt) {
+			V value;
+			if (bt instanceof BitemporalWrapper) {
+				value = ((BitemporalWrapper<V>) bt).getValue();
+			} else if (bt instanceof Version) {
+				value = ((Version<V>) bt).getValue();
+			} else {
+				throw new IllegalArgumentException(
+						"Only BitemporalWrappers can be stored in an off-heap trace, not " + bt.getClass().getName());
+			}
+
+			if ((size >>> ROWS_PER_CHUNK_SHIFT) == rowChunks.size()) {
+				rowChunks.add(ByteBuffer.allocateDirect(ROWS_PER_CHUNK * ROW_BYTES));
+			}
+			int row = size;
+			putInstant(row, VALIDITY_START, bt.getValidityInterval().getStart());
+			putInstant(row, VALIDITY_END, bt.getValidityInterval().getEnd());
+			putInstant(row, RECORD_START, bt.getRecordInterval().getStart());
+			putInstant(row, RECORD_END, bt.getRecordInterval().getEnd());
+			putValue(row, value);
+			size++;
+			return true;
+		}
+
+		public Version<V> version(int row) {
+			return new Version<>(this, row);
+		}
+
+		/**
+		 * Does the interval stored at given column (start) and the next column (end) contain given instant?
+		 */
+		public boolean contains(int row, int startColumn, Instant instant) {
+			return compare(row, startColumn, instant) <= 0 && compare(row, startColumn + INSTANT_BYTES, instant) > 0;
+		}
+
+		/**
+		 * Does the validity interval of given row {@link Interval#overlaps(Interval) overlap} with given interval?
+		 */
+		public boolean overlaps(int row, Interval interval) {
+			int startToEnd = compare(row, VALIDITY_START, interval.getEnd());
+			int endToStart = compare(row, VALIDITY_END, interval.getStart());
+			return startToEnd < 0 && endToStart > 0
+					|| (compare(row, VALIDITY_START, interval.getStart()) == 0
+							&& compare(row, VALIDITY_END, interval.getEnd()) == 0);
+		}
+
+		/**
+		 * Compare the instant stored at given column with given instant.
+		 */
+		public int compare(int row, int column, Instant instant) {
+			ByteBuffer chunk = rowChunk(row);
+			int offset = rowOffset(row) + column;
+			int result = Long.compare(chunk.getLong(offset), instant.getEpochSecond());
+			return result != 0 ? result : Integer.compare(chunk.getInt(offset + 8), instant.getNano());
+		}
+
+		public Instant instant(int row, int column) {
+			ByteBuffer chunk = rowChunk(row);
+			int offset = rowOffset(row) + column;
+			return Instant.ofEpochSecond(chunk.getLong(offset), chunk.getInt(offset + 8));
+		}
+
+		public void putInstant(int row, int column, Instant instant) {
+			ByteBuffer chunk = rowChunk(row);
+			int offset = rowOffset(row) + column;
+			chunk.putLong(offset, instant.getEpochSecond());
+			chunk.putInt(offset + 8, instant.getNano());
+		}
+
+		public V value(int row) {
+			ByteBuffer chunk = rowChunk(row);
+			int offset = rowOffset(row);
+			int length = chunk.getInt(offset + VALUE_LENGTH);
+			if (length == NULL_VALUE) {
+				return null;
+			}
+			ByteBuffer values = valueChunks.get(chunk.getInt(offset + VALUE_CHUNK)).duplicate();
+			values.position(chunk.getInt(offset + VALUE_OFFSET));
+			byte[] bytes = new byte[length];
+			values.get(bytes);
+			return codec.decode(bytes);
+		}
+
+		private void putValue(int row, V value) {
+			ByteBuffer chunk = rowChunk(row);
+			int offset = rowOffset(row);
+			if (value == null) {
+				chunk.putInt(offset + VALUE_LENGTH, NULL_VALUE);
+				return;
+			}
+
+			byte[] bytes = codec.encode(value);
+			ByteBuffer current = valueChunks.isEmpty() ? null : valueChunks.get(valueChunks.size() - 1);
+			if (current == null || valueChunkUsed + bytes.length > current.capacity()) {
+				current = ByteBuffer.allocateDirect(Math.max(VALUE_CHUNK_BYTES, bytes.length));
+				valueChunks.add(current);
+				valueChunkUsed = 0;
+			}
+			ByteBuffer values = current.duplicate();
+			values.position(valueChunkUsed);
+			values.put(bytes);
+			chunk.putInt(offset + VALUE_CHUNK, valueChunks.size() - 1);
+			chunk.putInt(offset + VALUE_OFFSET, valueChunkUsed);
+			chunk.putInt(offset + VALUE_LENGTH, bytes.length);
+			valueChunkUsed += bytes.length;
+		}
+
+		private ByteBuffer rowChunk(int row) {
+			return rowChunks.get(row >>> ROWS_PER_CHUNK_SHIFT);
+		}
+
+		private int rowOffset(int row) {
+			return (row & (ROWS_PER_CHUNK - 1)) * ROW_BYTES;
+		}
+	}
+}
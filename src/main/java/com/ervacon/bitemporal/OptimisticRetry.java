@@ -0,0 +1,86 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+
+/**
+ * Reruns a unit of work that failed because of an optimistic concurrency conflict, e.g. because another transaction
+ * corrected the same persistent trace in the meantime. Since traces are manipulated in memory and written at the end
+ * of the unit of work, both writers would otherwise end the same bitemporals and add conflicting new versions.
+ * <p>
+ * Conflicts are typically detected using a version of the entity owning the trace (checked and incremented when the
+ * changed trace is flushed), or by only ending bitemporals that are still known when writing (as
+ * {@link JdbcTraceWriter} does). The unit of work should start from scratch on every attempt: load the entity in a
+ * new transaction, manipulate it and commit. Writers that don't conflict never wait for each other.
+ * <p>
+ * Objects of this class are thread-safe.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class OptimisticRetry {
+
+	private final int maxAttempts;
+	private final Predicate<? super Throwable> conflict;
+
+	/**
+	 * Create a new helper making at most given number of attempts, using specified predicate to recognize conflicts.
+	 * The predicate is tested on the exception thrown by the unit of work and all its causes.
+	 */
+	public OptimisticRetry(int maxAttempts, Predicate<? super Throwable> conflict) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("At least one attempt is required");
+		}
+		this.maxAttempts = maxAttempts;
+		this.conflict = requireNonNull(conflict, "The conflict predicate is required");
+	}
+
+	/**
+	 * Run given unit of work, retrying it on conflict.
+	 */
+	public void run(Runnable work) {
+		requireNonNull(work, "The unit of work is required");
+		try {
+			call(() -> {
+				work.run();
+				return null;
+			});
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e); // cannot happen, runnables don't throw checked exceptions
+		}
+	}
+
+	/**
+	 * Call given unit of work, retrying it on conflict. When the last attempt fails, its exception is thrown.
+	 * @return the result of the successful attempt
+	 */
+	public <R> R call(Callable<R> work) throws Exception {
+		requireNonNull(work, "The unit of work is required");
+		for (int attempt = 1;; attempt++) {
+			try {
+				return work.call();
+			} catch (Exception e) {
+				if (attempt >= maxAttempts || !isConflict(e)) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private boolean isConflict(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+			if (conflict.test(cause)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
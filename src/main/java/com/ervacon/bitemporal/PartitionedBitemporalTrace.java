@@ -0,0 +1,295 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.END_OF_TIME;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import org.threeten.extra.Interval;
+
+/**
+ * A {@link BitemporalTrace} partitioning its bitemporals on validity time, speeding up queries for long traces
+ * when only a narrow validity window is of interest.
+ * <p>
+ * Every bitemporal belongs to the partition containing the start of its validity interval, so it is only indexed
+ * once, even if it is valid for many partitions. Every partition tracks the latest end of the validity intervals of
+ * its current bitemporals, and separately of all its bitemporals: queries about validity instants or ranges only
+ * look at the partitions starting before the end of the range and having a bitemporal, known at the time of the
+ * query, valid after its start. Current bitemporals valid until the end of time (typically at most one) are kept
+ * apart and are always looked at. For a typical trace, a point query about the current knowledge only looks at a
+ * single partition. Queries about past knowledge skip the partitions recorded later, but also look at the partitions
+ * holding bitemporals that were valid until the end of time when they were superseded.
+ * <p>
+ * When a query needs to look at several partitions holding many bitemporals, the partitions are scanned in
+ * parallel. Results are ordered by partition, current bitemporals valid until the end of time coming last.
+ * <p>
+ * The partitions are an index of the data collection, built on first use, and rebuilt when the size of the data
+ * collection changes behind the back of the trace. They are not persisted.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class PartitionedBitemporalTrace extends BitemporalTrace {
+
+	// minimum number of bitemporals to scan before scanning partitions in parallel
+	private static final int PARALLEL_THRESHOLD = 4096;
+
+	private final Collection<Bitemporal> data;
+	private final Partitioning partitioning;
+
+	private transient TreeMap<Instant, Partition> partitions;
+	private transient Partition openEnded; // current bitemporals valid until the end of time
+	private transient int partitionedSize;
+
+	/**
+	 * Create a new trace working on top of given data collection, partitioned using given partitioning.
+	 */
+	public PartitionedBitemporalTrace(Collection<Bitemporal> data, Partitioning partitioning) {
+		super(new Indexing(data));
+		((Indexing) getData()).trace = this;
+		this.data = data;
+		this.partitioning = requireNonNull(partitioning, "The partitioning is required");
+	}
+
+	public Partitioning getPartitioning() {
+		return partitioning;
+	}
+
+	/**
+	 * Returns the number of partitions holding bitemporals.
+	 */
+	public int getPartitionCount() {
+		return partitions().size();
+	}
+
+	/**
+	 * Returns the number of partitions looked at by queries about given validity range, as known on specified
+	 * instant (<code>null</code> for queries about any instant, like {@link #getEvolution(Instant)}). Queries about
+	 * a single validity instant use an empty range.
+	 */
+	public int getPartitionCount(Interval validityRange, Instant knownOn) {
+		requireNonNull(validityRange, "The validity range is required");
+		return candidates(validityRange.getStart(), validityRange.getEnd(), knownOn).size()
+				- (openEnded.rows.isEmpty() ? 0 : 1);
+	}
+
+	@Override
+	public boolean isBackedBy(Collection<?> data) {
+		return this.data == data;
+	}
+
+	@Override
+	public List<Bitemporal> get(Instant validOn, Instant knownOn) {
+		return scan(candidates(validOn, validOn, knownOn), bt -> matches(bt, validOn, knownOn));
+	}
+
+	@Override
+	public Bitemporal find(Instant validOn, Instant knownOn) {
+		for (Partition partition : candidates(validOn, validOn, knownOn)) {
+			List<Bitemporal> rows = partition.rows;
+			for (int i = 0, size = rows.size(); i < size; i++) {
+				Bitemporal bt = rows.get(i);
+				if (matches(bt, validOn, knownOn)) {
+					return bt;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public List<Bitemporal> getHistory(Instant knownOn) {
+		List<Partition> all = new ArrayList<>(partitions().values());
+		all.add(openEnded);
+		return scan(all, bt -> bt.getRecordInterval().contains(knownOn));
+	}
+
+	@Override
+	public List<Bitemporal> getEvolution(Instant validOn) {
+		return scan(candidates(validOn, validOn, null), bt -> bt.getValidityInterval().contains(validOn));
+	}
+
+	/**
+	 * Returns the {@link Bitemporal} objects whose validity interval {@link Interval#overlaps(Interval) overlaps}
+	 * with given validity range, as known on specified instant.
+	 */
+	public List<Bitemporal> getOverlapping(Interval validityRange, Instant knownOn) {
+		requireNonNull(validityRange, "The validity range is required");
+		return scan(candidates(validityRange.getStart(), validityRange.getEnd(), knownOn),
+				bt -> bt.getValidityInterval().overlaps(validityRange) && bt.getRecordInterval().contains(knownOn));
+	}
+
+	@Override
+	protected void end(Bitemporal bt) {
+		super.end(bt);
+		if (partitions != null && partitionedSize == data.size()) {
+			if (openEnded.rows.removeIf(row -> row == bt)) {
+				partition(bt);
+			} else {
+				Partition partition = partitions.get(partitioning.partitionOf(bt.getValidityInterval().getStart()));
+				if (partition != null) {
+					partition.summarize();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the partitions that could hold bitemporals valid between given instants (both inclusive), as known on
+	 * specified instant (<code>null</code> for any instant).
+	 */
+	private List<Partition> candidates(Instant from, Instant to, Instant knownOn) {
+		List<Partition> result = new ArrayList<>();
+		for (Partition partition : partitions().headMap(to, true).values()) {
+			if (knownOn != null && knownOn.isBefore(partition.earliestRecordStart)) {
+				continue;
+			}
+			// only current bitemporals can be known after the latest end of a recording interval in the partition
+			Instant maxEnd = knownOn != null && !knownOn.isBefore(partition.latestRecordEnd)
+					? partition.currentMaxEnd : partition.maxEnd;
+			if (!maxEnd.isBefore(from)) {
+				result.add(partition);
+			}
+		}
+		if (!openEnded.rows.isEmpty()) {
+			result.add(openEnded);
+		}
+		return result;
+	}
+
+	private static List<Bitemporal> scan(Collection<Partition> partitions, Predicate<Bitemporal> filter) {
+		int rows = 0;
+		for (Partition partition : partitions) {
+			rows += partition.rows.size();
+		}
+		Stream<Partition> stream = partitions.size() > 1 && rows >= PARALLEL_THRESHOLD
+				? partitions.parallelStream() : partitions.stream();
+		return stream.flatMap(partition -> partition.rows.stream().filter(filter)).collect(toList());
+	}
+
+	private static boolean matches(Bitemporal bt, Instant validOn, Instant knownOn) {
+		return bt.getValidityInterval().contains(validOn) && bt.getRecordInterval().contains(knownOn);
+	}
+
+	/**
+	 * Returns the partitions, (re)building them if needed.
+	 */
+	private TreeMap<Instant, Partition> partitions() {
+		if (partitions == null || partitionedSize != data.size()) {
+			partitions = new TreeMap<>();
+			openEnded = new Partition();
+			data.forEach(this::partition);
+			partitionedSize = data.size();
+		}
+		return partitions;
+	}
+
+	/**
+	 * Add given bitemporal, just added to the data collection, to the partitions if they are up to date.
+	 */
+	private void added(Bitemporal bt) {
+		if (partitions != null && partitionedSize == data.size() - 1) {
+			partition(bt);
+			partitionedSize = data.size();
+		}
+	}
+
+	private void partition(Bitemporal bt) {
+		if (bt.getValidityInterval().getEnd().equals(END_OF_TIME)
+				&& bt.getRecordInterval().getEnd().equals(END_OF_TIME)) {
+			openEnded.rows.add(bt);
+			return;
+		}
+		Instant start = partitioning.partitionOf(bt.getValidityInterval().getStart());
+		Partition partition = partitions.get(start);
+		if (partition == null) {
+			partition = new Partition();
+			partitions.put(start, partition);
+		}
+		partition.rows.add(bt);
+		partition.include(bt);
+	}
+
+	/**
+	 * The bitemporals whose validity interval starts in a partition.
+	 */
+	private static class Partition {
+
+		private final List<Bitemporal> rows = new ArrayList<>();
+		private Instant maxEnd = Instant.MIN; // latest validity end of all bitemporals
+		private Instant currentMaxEnd = Instant.MIN; // latest validity end of the current bitemporals
+		private Instant latestRecordEnd = Instant.MIN; // latest recording end of the superseded bitemporals
+		private Instant earliestRecordStart = Instant.MAX; // nothing in the partition was known before
+
+		public void include(Bitemporal bt) {
+			Instant validityEnd = bt.getValidityInterval().getEnd();
+			Instant recordEnd = bt.getRecordInterval().getEnd();
+			Instant recordStart = bt.getRecordInterval().getStart();
+			earliestRecordStart = recordStart.isBefore(earliestRecordStart) ? recordStart : earliestRecordStart;
+			maxEnd = max(maxEnd, validityEnd);
+			if (recordEnd.equals(END_OF_TIME)) {
+				currentMaxEnd = max(currentMaxEnd, validityEnd);
+			} else {
+				latestRecordEnd = max(latestRecordEnd, recordEnd);
+			}
+		}
+
+		/**
+		 * Recalculate the latest ends, e.g. after a bitemporal was superseded.
+		 */
+		public void summarize() {
+			maxEnd = Instant.MIN;
+			currentMaxEnd = Instant.MIN;
+			latestRecordEnd = Instant.MIN;
+			earliestRecordStart = Instant.MAX;
+			rows.forEach(this::include);
+		}
+
+		private static Instant max(Instant a, Instant b) {
+			return a.isAfter(b) ? a : b;
+		}
+	}
+
+	/**
+	 * A view of the data collection keeping the partitions up to date when bitemporals are added.
+	 */
+	private static class Indexing extends AbstractCollection<Bitemporal> implements Serializable {
+
+		private final Collection<Bitemporal> data;
+		private PartitionedBitemporalTrace trace;
+
+		public Indexing(Collection<Bitemporal> data) {
+			this.data = requireNonNull(data, "The bitemporal data is required");
+		}
+
+		@Override
+		public Iterator<Bitemporal> iterator() {
+			return data.iterator();
+		}
+
+		@Override
+		public int size() {
+			return data.size();
+		}
+
+		@Override
+		public boolean add(Bitemporal bt) {
+			data.add(bt);
+			trace.added(bt);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Strategy dividing validity time into consecutive partitions, used by a {@link PartitionedBitemporalTrace}.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public interface Partitioning extends Serializable {
+
+	/**
+	 * Returns the start of the partition containing given instant.
+	 */
+	public Instant partitionOf(Instant instant);
+
+	/**
+	 * Returns a partitioning with a partition per calendar year in given time zone.
+	 */
+	public static Partitioning yearly(ZoneId zone) {
+		requireNonNull(zone, "The time zone is required");
+		return instant -> instant.atZone(zone).withDayOfYear(1).truncatedTo(ChronoUnit.DAYS).toInstant();
+	}
+
+	/**
+	 * Returns a partitioning with partitions of given fixed size (in whole seconds), starting on the epoch.
+	 */
+	public static Partitioning fixed(Duration size) {
+		long seconds = requireNonNull(size, "The partition size is required").getSeconds();
+		if (seconds < 1) {
+			throw new IllegalArgumentException("The partition size should be at least one second");
+		}
+		return instant -> Instant.ofEpochSecond(Math.floorDiv(instant.getEpochSecond(), seconds) * seconds);
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.END_OF_TIME;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.threeten.extra.Interval;
+
+/**
+ * A {@link BitemporalTrace} keeping the current knowledge and the history in separate data collections, typically
+ * mapped to separate tables (e.g. <code>Address</code> and <code>AddressHistory</code>).
+ * <p>
+ * New bitemporals are added to the current collection. When a bitemporal is ended by this trace, it is removed from
+ * the current collection and an exact copy (recording interval included) is added to the history collection.
+ * Queries about the current knowledge only look at the current collection, so they stay fast no matter how much
+ * history accumulates. Other queries look at both collections. The {@link #getData() data collection} of the trace
+ * is a view combining both.
+ * <p>
+ * Copies are used instead of moving the bitemporals themselves, since ORM tools typically cannot move an object from
+ * one table to another.
+ * <p>
+ * To know whether a query can skip the history collection, the trace needs the latest end of a recording interval in
+ * the history. By default it is derived by scanning the history collection, which loads a lazily loaded collection.
+ * To avoid that, persist it along with the owner of the trace, and pass it (and a listener storing changes) on
+ * construction.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+@SuppressWarnings("unchecked")
+public class SplitBitemporalTrace extends BitemporalTrace {
+
+	private final Collection<Bitemporal> current;
+	private final Collection<Bitemporal> history;
+	private final transient Consumer<Instant> latestHistoryEndListener; // absent when deriving the latest end
+
+	private transient Instant latestHistoryEnd;
+	private transient int historySize;
+
+	/**
+	 * Create a new split trace working on top of given current and history data collections.
+	 */
+	public SplitBitemporalTrace(Collection<? extends Bitemporal> current, Collection<? extends Bitemporal> history) {
+		super(new Union((Collection<Bitemporal>) current, (Collection<Bitemporal>) history));
+		this.current = (Collection<Bitemporal>) current;
+		this.history = (Collection<Bitemporal>) history;
+		this.latestHistoryEndListener = null;
+	}
+
+	/**
+	 * Create a new split trace working on top of given current and history data collections, given the (persisted)
+	 * latest end of a recording interval in the history collection, <code>null</code> if the history is empty. The
+	 * history collection is not scanned, the specified listener is notified whenever the latest end changes.
+	 */
+	public SplitBitemporalTrace(Collection<? extends Bitemporal> current, Collection<? extends Bitemporal> history,
+			Instant latestHistoryEnd, Consumer<Instant> latestHistoryEndListener) {
+		super(new Union((Collection<Bitemporal>) current, (Collection<Bitemporal>) history));
+		this.current = (Collection<Bitemporal>) current;
+		this.history = (Collection<Bitemporal>) history;
+		this.latestHistoryEnd = latestHistoryEnd == null ? Instant.MIN : latestHistoryEnd;
+		this.latestHistoryEndListener =
+				requireNonNull(latestHistoryEndListener, "The latest history end listener is required");
+	}
+
+	/**
+	 * Returns the data collection holding the current knowledge.
+	 */
+	public Collection<Bitemporal> getCurrentData() {
+		return current;
+	}
+
+	/**
+	 * Returns the data collection holding the history.
+	 */
+	public Collection<Bitemporal> getHistoryData() {
+		return history;
+	}
+
+	@Override
+	public boolean isBackedBy(Collection<?> data) {
+		return current == data || history == data;
+	}
+
+	@Override
+	protected Collection<Bitemporal> getData(Instant knownOn) {
+		return knownOn.isBefore(latestHistoryEnd()) ? getData() : current;
+	}
+
+	@Override
+	protected void end(Bitemporal bt) {
+		super.end(bt);
+		Instant recordEnd = bt.getRecordInterval().getEnd();
+		if (!recordEnd.equals(END_OF_TIME) && removeCurrent(bt)) {
+			Instant latest = latestHistoryEnd();
+			history.add(archive(bt));
+			if (recordEnd.isAfter(latest)) {
+				latestHistoryEnd = recordEnd;
+				if (latestHistoryEndListener != null) {
+					latestHistoryEndListener.accept(recordEnd);
+				}
+			}
+			if (latestHistoryEndListener == null) {
+				historySize = history.size();
+			}
+		}
+	}
+
+	/**
+	 * Returns an exact copy of given ended bitemporal, to add to the history collection. The default implementation
+	 * {@link Bitemporal#copyWith(Interval) copies} the bitemporal on the start of its recording interval and ends the
+	 * copy on the end of that interval.
+	 */
+	protected Bitemporal archive(Bitemporal bt) {
+		Interval recordInterval = bt.getRecordInterval();
+		Bitemporal[] copy = new Bitemporal[1];
+		TimeUtils.runAt(recordInterval.getStart(), () -> copy[0] = bt.copyWith(bt.getValidityInterval()));
+		TimeUtils.runAt(recordInterval.getEnd(), copy[0]::end);
+		return copy[0];
+	}
+
+	/**
+	 * Remove given bitemporal (not an equal one) from the current collection.
+	 */
+	private boolean removeCurrent(Bitemporal bt) {
+		for (Iterator<Bitemporal> it = current.iterator(); it.hasNext();) {
+			if (it.next() == bt) {
+				it.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the latest end of a recording interval in the history collection: the current collection holds
+	 * everything known on or after that instant. Unless it was given on construction, this is derived from the
+	 * history collection, and derived again when its size changes.
+	 */
+	private Instant latestHistoryEnd() {
+		if (latestHistoryEndListener != null) {
+			return latestHistoryEnd;
+		}
+		if (latestHistoryEnd == null || historySize != history.size()) {
+			latestHistoryEnd = Instant.MIN;
+			for (Bitemporal bt : history) {
+				Instant recordEnd = bt.getRecordInterval().getEnd();
+				if (recordEnd.isAfter(latestHistoryEnd)) {
+					latestHistoryEnd = recordEnd;
+				}
+			}
+			historySize = history.size();
+		}
+		return latestHistoryEnd;
+	}
+
+	/**
+	 * A view combining the current and history collections. Additions go to the current collection.
+	 */
+	private static class Union extends AbstractCollection<Bitemporal> implements Serializable {
+
+		private final Collection<Bitemporal> current;
+		private final Collection<Bitemporal> history;
+
+		public Union(Collection<Bitemporal> current, Collection<Bitemporal> history) {
+			this.current = requireNonNull(current, "The current bitemporal data is required");
+			this.history = requireNonNull(history, "The historic bitemporal data is required");
+		}
+
+		@Override
+		public Iterator<Bitemporal> iterator() {
+			return Stream.concat(current.stream(), history.stream()).iterator();
+		}
+
+		@Override
+		public int size() {
+			return current.size() + history.size();
+		}
+
+		@Override
+		public boolean add(Bitemporal bt) {
+			return current.add(bt);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.function.ToDoubleFunction;
+import org.threeten.extra.Interval;
+
+/**
+ * Time-weighted aggregate of the numeric values of a {@link BitemporalProperty} over a validity range, as returned by
+ * {@link BitemporalProperty#aggregate(Interval, Instant, ToDoubleFunction)}.
+ * <p>
+ * Every value contributes to the sum with a weight equal to the number of seconds it was valid within the range,
+ * so the average is the time-weighted average of the value over the part of the range that has a value.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public final class TemporalAggregate implements Serializable {
+
+	private final long count;
+	private final double min;
+	private final double max;
+	private final double sum;
+	private final double seconds;
+
+	TemporalAggregate(long count, double min, double max, double sum, double seconds) {
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.sum = sum;
+		this.seconds = seconds;
+	}
+
+	/**
+	 * Returns the number of values that were valid during some part of the range.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the minimum value valid during the range, or {@link Double#POSITIVE_INFINITY} if there is none.
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the maximum value valid during the range, or {@link Double#NEGATIVE_INFINITY} if there is none.
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the time-weighted sum: the sum of every value multiplied by the number of seconds it was valid
+	 * within the range.
+	 */
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * Returns the number of seconds within the range that have a value.
+	 */
+	public double getSeconds() {
+		return seconds;
+	}
+
+	/**
+	 * Returns the time-weighted average of the value over the part of the range that has a value, or
+	 * {@link Double#NaN} if there is none.
+	 */
+	public double getAverage() {
+		return seconds > 0 ? sum / seconds : Double.NaN;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + ", min=" + min + ", max=" + max + ", sum=" + sum + ", seconds=" + seconds;
+	}
+}
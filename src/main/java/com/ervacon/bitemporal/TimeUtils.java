@@ -4,10 +4,15 @@
  */
 package com.ervacon.bitemporal;
 
-import java.time.Clock;
+import static java.util.Objects.requireNonNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.concurrent.Callable;
 import org.threeten.extra.Interval;
 
 /**
@@ -30,21 +35,23 @@ public final class TimeUtils {
 	private TimeUtils() {
 	}
 
-	// time framing functionality
-	private static final ThreadLocal<Clock> REFERENCE = new ThreadLocal<>();
+	// time framing functionality: the reference time is kept in a thread local, tasks run at a reference time
+	// get a frame bound to a scoped value when available (Java 25 and up)
+	private static final ThreadLocal<Instant> REFERENCE = new ThreadLocal<>();
 
 	/**
 	 * Determines whether or not a reference time has been set.
 	 */
 	public static boolean isReferenceSet() {
-		return REFERENCE.get() != null;
+		return currentReference() != null;
 	}
 
 	/**
 	 * Returns the reference time, or <i>wallclock now</i> if no reference time has been set.
 	 */
 	public static Instant reference() {
-		return isReferenceSet() ? REFERENCE.get().instant() : Clock.systemDefaultZone().instant();
+		Instant reference = currentReference();
+		return reference != null ? reference : Instant.now();
 	}
 
 	/**
@@ -52,14 +59,242 @@ public final class TimeUtils {
 	 * @param dateTime the reference time to set
 	 */
 	public static void setReference(Instant dateTime) {
-		REFERENCE.set(Clock.fixed(dateTime, ZoneId.systemDefault()));
+		requireNonNull(dateTime, "The reference time is required");
+		Frame frame = ownFrame();
+		if (frame != null) {
+			frame.reference = dateTime;
+		} else {
+			REFERENCE.set(dateTime);
+		}
 	}
 
 	/**
 	 * Clear the reference time.
 	 */
 	public static void clearReference() {
-		REFERENCE.remove();
+		Frame frame = ownFrame();
+		if (frame != null) {
+			frame.reference = null;
+		} else {
+			REFERENCE.remove();
+		}
+	}
+
+	/**
+	 * Run given task with the reference time set to the specified time. Once the task completes, the reference
+	 * time is restored to what it was before, leaving nothing behind on the current thread if no reference time
+	 * was set. Prefer this over {@link #setReference(Instant)} on short-lived (e.g. virtual) threads: on Java 25 and
+	 * up, the reference time is bound to a {@code ScopedValue} rather than stored in a thread local. It is then also
+	 * inherited by the subtasks forked from the task in a {@code StructuredTaskScope}.
+	 */
+	public static void runAt(Instant dateTime, Runnable task) {
+		runWith(requireNonNull(dateTime, "The reference time is required"), task);
+	}
+
+	/**
+	 * Call given task with the reference time set to the specified time, returning its result.
+	 * @see #runAt(Instant, Runnable)
+	 */
+	public static <T> T callAt(Instant dateTime, Callable<T> task) throws Exception {
+		return callWith(requireNonNull(dateTime, "The reference time is required"), task);
+	}
+
+	/**
+	 * Returns a task running given task with the reference time of the current thread. Use this to have tasks
+	 * handed to other threads (e.g. an executor) inherit the time frame of the submitting thread. When the current
+	 * thread has no reference time, the task runs without one, whatever the thread running it has set. Either way,
+	 * the reference time of the thread running the task is restored afterwards.
+	 */
+	public static Runnable inheritReference(Runnable task) {
+		requireNonNull(task, "The task is required");
+		Instant reference = currentReference();
+		return () -> runWith(reference, task);
+	}
+
+	/**
+	 * Returns a task calling given task with the reference time of the current thread.
+	 * @see #inheritReference(Runnable)
+	 */
+	public static <T> Callable<T> inheritReference(Callable<T> task) {
+		requireNonNull(task, "The task is required");
+		Instant reference = currentReference();
+		return () -> callWith(reference, task);
+	}
+
+	/**
+	 * Returns the reference time of the current thread, <code>null</code> if none is set. A task run at a
+	 * reference time sees the reference time of its frame. Subtasks inheriting that frame see the reference time
+	 * they set themselves, if any.
+	 */
+	private static Instant currentReference() {
+		Frame frame = ScopedFrame.get();
+		if (frame != null && frame.owner == Thread.currentThread()) {
+			return frame.reference;
+		}
+		Instant reference = REFERENCE.get();
+		return reference != null || frame == null ? reference : frame.reference;
+	}
+
+	/**
+	 * Returns the frame of the task run at a reference time by the current thread, if any.
+	 */
+	private static Frame ownFrame() {
+		Frame frame = ScopedFrame.get();
+		return frame != null && frame.owner == Thread.currentThread() ? frame : null;
+	}
+
+	/**
+	 * Run given task with given reference time, or without one if <code>null</code>.
+	 */
+	private static void runWith(Instant reference, Runnable task) {
+		if (ScopedFrame.AVAILABLE) {
+			ScopedFrame.run(new Frame(reference), task);
+			return;
+		}
+		Instant previous = REFERENCE.get();
+		restoreReference(reference);
+		try {
+			task.run();
+		} finally {
+			restoreReference(previous);
+		}
+	}
+
+	/**
+	 * Call given task with given reference time, or without one if <code>null</code>.
+	 */
+	private static <T> T callWith(Instant reference, Callable<T> task) throws Exception {
+		if (ScopedFrame.AVAILABLE) {
+			Object[] result = new Object[1];
+			Exception[] failure = new Exception[1];
+			ScopedFrame.run(new Frame(reference), () -> {
+				try {
+					result[0] = task.call();
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			});
+			if (failure[0] != null) {
+				throw failure[0];
+			}
+			@SuppressWarnings("unchecked")
+			T value = (T) result[0];
+			return value;
+		}
+		Instant previous = REFERENCE.get();
+		restoreReference(reference);
+		try {
+			return task.call();
+		} finally {
+			restoreReference(previous);
+		}
+	}
+
+	private static void restoreReference(Instant previous) {
+		if (previous == null) {
+			REFERENCE.remove();
+		} else {
+			REFERENCE.set(previous);
+		}
+	}
+
+	/**
+	 * The reference time of a task run at a reference time, owned by the thread running the task.
+	 */
+	private static final class Frame {
+
+		private final Thread owner = Thread.currentThread();
+		private Instant reference;
+
+		private Frame(Instant reference) {
+			this.reference = reference;
+		}
+	}
+
+	/**
+	 * Binds frames to a {@code ScopedValue}, accessed reflectively since this code is compiled for Java 8. The method
+	 * handles are constants, so reading the scoped value is inlined like a direct call would be.
+	 */
+	private static final class ScopedFrame {
+
+		private static final Object UNBOUND = new Object();
+
+		private static final MethodHandle OR_ELSE; // (Object) -> Object, bound to the scoped value
+		private static final MethodHandle WHERE; // (Object) -> Object (the carrier), bound to the scoped value
+		private static final MethodHandle RUN; // (Object, Runnable) -> void
+
+		/**
+		 * Are scoped values available, i.e. Java 25 and up (before, they were a preview feature, if present)?
+		 */
+		public static final boolean AVAILABLE;
+
+		// has a frame ever been bound? until then, the scoped value is not read at all; a plain field suffices since
+		// a thread only sees a bound frame if it bound it itself, or was forked by a thread that did
+		private static boolean bound;
+
+		static {
+			MethodHandle[] handles = lookup();
+			AVAILABLE = handles != null;
+			OR_ELSE = AVAILABLE ? handles[0] : null;
+			WHERE = AVAILABLE ? handles[1] : null;
+			RUN = AVAILABLE ? handles[2] : null;
+		}
+
+		private ScopedFrame() {
+		}
+
+		private static MethodHandle[] lookup() {
+			String version = System.getProperty("java.specification.version", "1.8");
+			try {
+				if (version.startsWith("1.") || Integer.parseInt(version) < 25) {
+					return null;
+				}
+				Class<?> type = Class.forName("java.lang.ScopedValue");
+				Class<?> carrierType = Class.forName("java.lang.ScopedValue$Carrier");
+				MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+				Object scopedValue = lookup.findStatic(type, "newInstance", MethodType.methodType(type)).invoke();
+				return new MethodHandle[] {
+						lookup.findVirtual(type, "orElse", MethodType.methodType(Object.class, Object.class))
+								.bindTo(scopedValue),
+						lookup.findStatic(type, "where", MethodType.methodType(carrierType, type, Object.class))
+								.bindTo(scopedValue)
+								.asType(MethodType.methodType(Object.class, Object.class)),
+						lookup.findVirtual(carrierType, "run", MethodType.methodType(void.class, Runnable.class))
+								.asType(MethodType.methodType(void.class, Object.class, Runnable.class)) };
+			} catch (Throwable e) {
+				return null; // use the thread local only
+			}
+		}
+
+		/**
+		 * Returns the frame bound to the scoped value, <code>null</code> if not bound.
+		 */
+		public static Frame get() {
+			if (!bound) {
+				return null;
+			}
+			try {
+				Object frame = (Object) OR_ELSE.invokeExact(UNBOUND);
+				return frame == UNBOUND ? null : (Frame) frame;
+			} catch (Throwable e) {
+				throw new IllegalStateException("Cannot read scoped reference time", e);
+			}
+		}
+
+		/**
+		 * Run given task with given frame bound to the scoped value.
+		 */
+		public static void run(Frame frame, Runnable task) {
+			bound = true;
+			try {
+				Object carrier = (Object) WHERE.invokeExact((Object) frame);
+				RUN.invokeExact(carrier, task);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e); // cannot happen, runnables don't throw checked exceptions
+			}
+		}
 	}
 
 	/**
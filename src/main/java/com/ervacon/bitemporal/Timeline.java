@@ -0,0 +1,188 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.END_OF_TIME;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import org.threeten.extra.Interval;
+
+/**
+ * An ordered index of bitemporals with non-overlapping validity intervals, typically the bitemporals making up the
+ * current knowledge of a trace. Lookups by validity are logarithmic in the size of the timeline.
+ * <p>
+ * Bitemporals are indexed on the start of their validity interval. Bitemporals with an empty validity interval
+ * never contain an instant, but can still overlap with other intervals, so they are tracked separately.
+ * <p>
+ * Objects of this class are not thread-safe.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+final class Timeline<T extends Bitemporal> {
+
+	private final TreeMap<Instant, T> versions = new TreeMap<>();
+	private final TreeMap<Instant, T> empties = new TreeMap<>();
+
+	/**
+	 * Returns the number of bitemporals in this timeline.
+	 */
+	public int size() {
+		return versions.size() + empties.size();
+	}
+
+	/**
+	 * Returns the bitemporals with a non-empty validity interval, ordered by validity.
+	 */
+	public Collection<T> values() {
+		return versions.values();
+	}
+
+	/**
+	 * Add given bitemporal to the timeline, unless it overlaps with a bitemporal already in the timeline.
+	 * @return true if the bitemporal was added, false otherwise
+	 */
+	public boolean put(T bt) {
+		Interval validity = bt.getValidityInterval();
+		if (isEmpty(validity)) {
+			if (empties.containsKey(validity.getStart()) || containsStrictly(validity.getStart())) {
+				return false;
+			}
+			empties.put(validity.getStart(), bt);
+		} else {
+			Instant floor = versions.floorKey(validity.getStart());
+			if (floor != null && versions.get(floor).getValidityInterval().getEnd().isAfter(validity.getStart())) {
+				return false;
+			}
+			Instant higher = versions.higherKey(validity.getStart());
+			if (higher != null && higher.isBefore(validity.getEnd())) {
+				return false;
+			}
+			if (!empties.subMap(validity.getStart(), false, validity.getEnd(), false).isEmpty()) {
+				return false;
+			}
+			versions.put(validity.getStart(), bt);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove given bitemporal from the timeline.
+	 */
+	public void remove(T bt) {
+		Interval validity = bt.getValidityInterval();
+		TreeMap<Instant, T> map = isEmpty(validity) ? empties : versions;
+		if (bt.equals(map.get(validity.getStart()))) {
+			map.remove(validity.getStart());
+		}
+	}
+
+	/**
+	 * Returns the bitemporal whose validity interval contains given instant, or null if there is none.
+	 */
+	public T at(Instant instant) {
+		Instant floor = versions.floorKey(instant);
+		if (floor == null) {
+			return null;
+		}
+		T bt = versions.get(floor);
+		return bt.getValidityInterval().contains(instant) ? bt : null;
+	}
+
+	/**
+	 * Returns the bitemporals whose validity interval {@link Interval#overlaps(Interval) overlaps} with given
+	 * interval.
+	 */
+	public List<T> overlapping(Interval interval) {
+		List<T> result = new ArrayList<>();
+		if (isEmpty(interval)) {
+			if (containsStrictly(interval.getStart())) {
+				result.add(at(interval.getStart()));
+			}
+			T empty = empties.get(interval.getStart());
+			if (empty != null) {
+				result.add(empty);
+			}
+		} else {
+			T lower = at(interval.getStart());
+			if (lower != null && lower.getValidityInterval().getStart().isBefore(interval.getStart())) {
+				result.add(lower);
+			}
+			result.addAll(versions.subMap(interval.getStart(), true, interval.getEnd(), false).values());
+			result.addAll(empties.subMap(interval.getStart(), false, interval.getEnd(), false).values());
+		}
+		return result;
+	}
+
+	/**
+	 * Add given bitemporal to the current knowledge indexed by this timeline, the way a trace does: the bitemporals
+	 * overlapping with it are removed from the timeline and ended, and the parts of them valid before or after it
+	 * are kept as copies. The copies and given bitemporal are stored and added to the timeline.
+	 * @param newValue the bitemporal to add
+	 * @param copy copies a bitemporal of the timeline, for given validity interval
+	 * @param retire ends a bitemporal of the timeline
+	 * @param store adds a copy or the new bitemporal to the trace
+	 * @return false, without changing anything, if one of the bitemporals to end was already ended behind the back
+	 * of the timeline
+	 */
+	public boolean supersede(T newValue, BiFunction<T, Interval, T> copy, Consumer<T> retire, Consumer<T> store) {
+		Interval validity = newValue.getValidityInterval();
+		List<T> toEnd = overlapping(validity);
+		for (T bt : toEnd) {
+			if (!isOpen(bt)) {
+				return false;
+			}
+		}
+
+		Instant start = validity.getStart();
+		Instant end = validity.getEnd();
+		List<T> toAdd = new ArrayList<>(3);
+		T startsBefore = at(start);
+		if (startsBefore != null && startsBefore.getValidityInterval().getStart().isBefore(start)) {
+			toAdd.add(copy.apply(startsBefore, interval(startsBefore.getValidityInterval().getStart(), start)));
+		}
+		T endsAfter = end.equals(END_OF_TIME) ? null : at(end);
+		if (endsAfter != null && endsAfter.getValidityInterval().getStart().isBefore(end)) {
+			toAdd.add(copy.apply(endsAfter, interval(end, endsAfter.getValidityInterval().getEnd())));
+		}
+		toAdd.add(newValue);
+
+		for (T bt : toEnd) {
+			remove(bt);
+			retire.accept(bt);
+		}
+		for (T bt : toAdd) {
+			store.accept(bt);
+			put(bt);
+		}
+		return true;
+	}
+
+	/**
+	 * Is given bitemporal still part of the current knowledge, i.e. not ended?
+	 */
+	static boolean isOpen(Bitemporal bt) {
+		return bt.getRecordInterval().getEnd().equals(END_OF_TIME);
+	}
+
+	static boolean isEmpty(Interval interval) {
+		return interval.getStart().equals(interval.getEnd());
+	}
+
+	/**
+	 * Is there a bitemporal in the timeline containing given instant, not starting on it?
+	 */
+	private boolean containsStrictly(Instant instant) {
+		T bt = at(instant);
+		return bt != null && bt.getValidityInterval().getStart().isBefore(instant);
+	}
+}
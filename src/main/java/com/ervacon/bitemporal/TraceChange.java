@@ -0,0 +1,91 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import org.threeten.extra.Interval;
+
+/**
+ * A change to the persistent form of a {@link BitemporalTrace}: {@link Type#INSERT inserting} a bitemporal added to
+ * the trace, or {@link Type#UPDATE updating} the recording interval of a bitemporal that was ended. Changes identify
+ * the trace by its owner, typically the id of the entity having the bitemporal property.
+ * <p>
+ * The recording interval of the bitemporal is captured when the change is created, since the bitemporal itself can
+ * be ended before the change is written.
+ *
+ * @see TraceWriter
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public final class TraceChange {
+
+	/**
+	 * The kinds of trace changes.
+	 */
+	public enum Type {
+		INSERT, UPDATE
+	}
+
+	private final Type type;
+	private final Object owner;
+	private final Bitemporal bitemporal;
+	private final Interval recordInterval;
+
+	private TraceChange(Type type, Object owner, Bitemporal bitemporal, Interval recordInterval) {
+		this.type = type;
+		this.owner = requireNonNull(owner, "The owner is required");
+		this.bitemporal = requireNonNull(bitemporal, "The bitemporal is required");
+		this.recordInterval = recordInterval;
+	}
+
+	/**
+	 * Returns a change inserting given bitemporal, added to the trace of specified owner.
+	 */
+	public static TraceChange insert(Object owner, Bitemporal bitemporal) {
+		return new TraceChange(Type.INSERT, owner, bitemporal, bitemporal.getRecordInterval());
+	}
+
+	/**
+	 * Returns a change updating the recording interval of given bitemporal, ended in the trace of specified owner.
+	 */
+	public static TraceChange update(Object owner, Bitemporal bitemporal) {
+		return new TraceChange(Type.UPDATE, owner, bitemporal, bitemporal.getRecordInterval());
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public Object getOwner() {
+		return owner;
+	}
+
+	public Bitemporal getBitemporal() {
+		return bitemporal;
+	}
+
+	/**
+	 * Returns the recording interval of the bitemporal at the time the change was made. Use this rather than the
+	 * recording interval of the bitemporal itself.
+	 */
+	public Interval getRecordInterval() {
+		return recordInterval;
+	}
+
+	/**
+	 * Combine this change with given later change of the same bitemporal: an insert followed by an update remains an
+	 * insert, with the latest recording interval.
+	 */
+	TraceChange coalesce(TraceChange later) {
+		return new TraceChange(type, owner, bitemporal, later.recordInterval);
+	}
+
+	@Override
+	public String toString() {
+		return type + "  ~  " + owner + "  ~  " + bitemporal.getValidityInterval() + "  ~  " + recordInterval;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+
+/**
+ * Keeps a replica of a {@link LoggedBitemporalTrace} up to date by applying the mutations in its
+ * {@link TraceMutationLog}. The replica should start out identical to the logged trace at the starting position,
+ * typically empty at position 0, or loaded from a snapshot taken at a known position.
+ * <p>
+ * Followers don't push: call {@link #catchUp()} whenever the replica needs to be brought up to date, for instance
+ * periodically or before serving a query.
+ * <p>
+ * Objects of this class are not thread-safe, and the replica should not be read while catching up.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class TraceFollower {
+
+	private static final int BATCH_SIZE = 1000;
+
+	private final TraceMutationLog log;
+	private final BitemporalTrace replica;
+	private long appliedPosition;
+
+	/**
+	 * Create a new follower applying given log, from its start, to specified replica.
+	 */
+	public TraceFollower(TraceMutationLog log, BitemporalTrace replica) {
+		this(log, replica, 0);
+	}
+
+	/**
+	 * Create a new follower applying given log, from given position onwards, to specified replica.
+	 */
+	public TraceFollower(TraceMutationLog log, BitemporalTrace replica, long position) {
+		this.log = requireNonNull(log, "The mutation log is required");
+		this.replica = requireNonNull(replica, "The replica trace is required");
+		if (position < 0) {
+			throw new IllegalArgumentException("The position cannot be negative");
+		}
+		this.appliedPosition = position;
+	}
+
+	public BitemporalTrace getReplica() {
+		return replica;
+	}
+
+	/**
+	 * Returns the position in the log up to which mutations have been applied to the replica.
+	 */
+	public long getAppliedPosition() {
+		return appliedPosition;
+	}
+
+	/**
+	 * Returns the number of mutations in the log not yet applied to the replica.
+	 */
+	public long getLag() {
+		return Math.max(0, log.getEndPosition() - appliedPosition);
+	}
+
+	/**
+	 * Apply all mutations added to the log since the last call.
+	 * @return the number of mutations applied
+	 */
+	public int catchUp() {
+		int applied = 0;
+		List<TraceMutation> mutations;
+		do {
+			mutations = log.read(appliedPosition, BATCH_SIZE);
+			for (TraceMutation mutation : mutations) {
+				mutation.applyTo(replica);
+				appliedPosition++;
+				applied++;
+			}
+		} while (mutations.size() == BATCH_SIZE);
+		return applied;
+	}
+}
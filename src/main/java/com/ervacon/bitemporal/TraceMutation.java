@@ -0,0 +1,99 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * A single manipulation of a {@link BitemporalTrace}: {@link BitemporalTrace#add(Bitemporal) adding} a bitemporal or
+ * {@link BitemporalTrace#end(Instant) ending} the bitemporals valid on some instant, together with the instant on
+ * which it was recorded. Applying the same mutations, in order, to identical traces leaves them identical.
+ * <p>
+ * A mutation is serializable if the bitemporal it adds is serializable.
+ *
+ * @see TraceMutationLog
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public final class TraceMutation implements Serializable {
+
+	/**
+	 * The kinds of trace mutations.
+	 */
+	public enum Type {
+		ADD, END
+	}
+
+	private final Type type;
+	private final Instant recordedAt;
+	private final Bitemporal bitemporal;
+	private final Instant validOn;
+
+	private TraceMutation(Type type, Instant recordedAt, Bitemporal bitemporal, Instant validOn) {
+		this.type = type;
+		this.recordedAt = requireNonNull(recordedAt, "The recording instant is required");
+		this.bitemporal = bitemporal;
+		this.validOn = validOn;
+	}
+
+	/**
+	 * Returns a mutation adding given bitemporal, recorded at specified instant.
+	 */
+	public static TraceMutation add(Instant recordedAt, Bitemporal bitemporal) {
+		return new TraceMutation(Type.ADD, recordedAt, requireNonNull(bitemporal, "The bitemporal is required"), null);
+	}
+
+	/**
+	 * Returns a mutation ending the bitemporals valid on given instant, recorded at specified instant.
+	 */
+	public static TraceMutation end(Instant recordedAt, Instant validOn) {
+		requireNonNull(validOn, "The validity instant is required");
+		return new TraceMutation(Type.END, recordedAt, null, validOn);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public Instant getRecordedAt() {
+		return recordedAt;
+	}
+
+	/**
+	 * Returns the added bitemporal, or null for an {@link Type#END end} mutation.
+	 */
+	public Bitemporal getBitemporal() {
+		return bitemporal;
+	}
+
+	/**
+	 * Returns the validity instant of the ended bitemporals, or null for an {@link Type#ADD add} mutation.
+	 */
+	public Instant getValidOn() {
+		return validOn;
+	}
+
+	/**
+	 * Apply this mutation to given trace, with the reference time set to the instant it was recorded on.
+	 */
+	public void applyTo(BitemporalTrace trace) {
+		TimeUtils.runAt(recordedAt, () -> {
+			if (type == Type.ADD) {
+				trace.add(bitemporal);
+			} else {
+				trace.end(validOn);
+			}
+		});
+	}
+
+	@Override
+	public String toString() {
+		return type + "  ~  " + recordedAt + "  ~  " + (type == Type.ADD ? bitemporal : validOn);
+	}
+}
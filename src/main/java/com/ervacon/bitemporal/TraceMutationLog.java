@@ -0,0 +1,35 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import java.util.List;
+
+/**
+ * An append-only log of {@link TraceMutation}s, typically filled by a {@link LoggedBitemporalTrace} and shipped to
+ * replicas by {@link TraceFollower}s. Mutations are identified by their position in the log, starting at 0.
+ * <p>
+ * Implementations should allow reading while another thread is appending.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public interface TraceMutationLog {
+
+	/**
+	 * Append given mutation to the end of the log.
+	 */
+	public void append(TraceMutation mutation);
+
+	/**
+	 * Returns the position following the last mutation in the log, i.e. the number of mutations in the log.
+	 */
+	public long getEndPosition();
+
+	/**
+	 * Returns at most given number of mutations, starting at specified position. The returned list is empty if
+	 * there are no mutations at or beyond that position (yet).
+	 */
+	public List<TraceMutation> read(long position, int maxCount);
+}
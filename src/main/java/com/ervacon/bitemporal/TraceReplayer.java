@@ -0,0 +1,135 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.END_OF_TIME;
+import static com.ervacon.bitemporal.TimeUtils.from;
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import org.threeten.extra.Interval;
+
+/**
+ * Rebuilds a bitemporal trace by replaying a log of historical events, for instance after a disaster.
+ * <p>
+ * Replaying an event has exactly the same effect as {@link BitemporalTrace#add(Bitemporal) adding} a
+ * {@link BitemporalWrapper} to the trace with the reference time {@link TimeUtils#setReference(Instant) set} to the
+ * moment the event was recorded. However, the replayer does not touch the time frame and keeps an ordered index
+ * of the current knowledge, so each event only costs time logarithmic in the size of the current knowledge (plus
+ * the number of bitemporals it affects), instead of a scan of the entire trace. Besides that index, no memory is
+ * used: the rebuilt bitemporals are directly appended to the data collection of the trace.
+ * <p>
+ * Events have to be replayed in the order they were recorded.
+ * <p>
+ * Objects of this class are not thread-safe.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class TraceReplayer<V> {
+
+	private final Collection<? super BitemporalWrapper<V>> data;
+	private final Timeline<BitemporalWrapper<V>> currentKnowledge = new Timeline<>();
+	private Instant latest = Instant.MIN;
+
+	/**
+	 * Create a new replayer appending to given data collection, typically the data collection of a trace. If the
+	 * collection is not empty, replayed events are applied on top of the existing data, which should consist of
+	 * {@link BitemporalWrapper}s.
+	 */
+	@SuppressWarnings("unchecked")
+	public TraceReplayer(Collection<? super BitemporalWrapper<V>> data) {
+		this.data = requireNonNull(data, "The bitemporal data is required");
+		for (Object obj : data) {
+			if (!(obj instanceof BitemporalWrapper)) {
+				throw new IllegalArgumentException("Can only replay on top of BitemporalWrappers, not " + obj);
+			}
+			BitemporalWrapper<V> bt = (BitemporalWrapper<V>) obj;
+			Interval recordInterval = bt.getRecordInterval();
+			latest = max(latest, recordInterval.getStart());
+			if (recordInterval.getEnd().equals(END_OF_TIME)) {
+				if (!currentKnowledge.put(bt)) {
+					throw new IllegalArgumentException("Cannot replay on top of overlapping bitemporals: " + bt);
+				}
+			} else {
+				latest = max(latest, recordInterval.getEnd());
+			}
+		}
+	}
+
+	/**
+	 * Replay given events, in order.
+	 */
+	public void replay(Stream<Event<V>> events) {
+		events.forEachOrdered(event -> replay(event.getRecordedAt(), event.getValidityInterval(), event.getValue()));
+	}
+
+	/**
+	 * Replay given events, in order.
+	 */
+	public void replay(Iterator<Event<V>> events) {
+		events.forEachRemaining(event -> replay(event.getRecordedAt(), event.getValidityInterval(), event.getValue()));
+	}
+
+	/**
+	 * Replay a single event: given value was recorded at specified instant, valid for given validity interval.
+	 * @throws IllegalStateException when the event was recorded before data already in the trace
+	 */
+	public void replay(Instant recordedAt, Interval validityInterval, V value) throws IllegalStateException {
+		requireNonNull(recordedAt, "The recording instant is required");
+		requireNonNull(validityInterval, "The validity interval is required");
+		if (recordedAt.isBefore(latest)) {
+			throw new IllegalStateException(
+					"Cannot replay event recorded on " + recordedAt + "; trace contains data from the future");
+		}
+		latest = recordedAt;
+
+		// the bitemporals in the index are never ended behind its back, so this always succeeds
+		currentKnowledge.supersede(new BitemporalWrapper<>(value, validityInterval, from(recordedAt)),
+				(bt, validity) -> new BitemporalWrapper<>(bt.getValue(), validity, from(recordedAt)),
+				bt -> bt.end(recordedAt),
+				data::add);
+	}
+
+	private static Instant max(Instant a, Instant b) {
+		return a.isAfter(b) ? a : b;
+	}
+
+	/**
+	 * A historical event: a value recorded at some instant, valid for a given validity interval.
+	 */
+	public static final class Event<V> {
+
+		private final Instant recordedAt;
+		private final Interval validityInterval;
+		private final V value;
+
+		public Event(Instant recordedAt, Interval validityInterval, V value) {
+			this.recordedAt = requireNonNull(recordedAt, "The recording instant is required");
+			this.validityInterval = requireNonNull(validityInterval, "The validity interval is required");
+			this.value = value;
+		}
+
+		public Instant getRecordedAt() {
+			return recordedAt;
+		}
+
+		public Interval getValidityInterval() {
+			return validityInterval;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return getRecordedAt() + "  ~  " + getValidityInterval() + "  ~  " + getValue();
+		}
+	}
+}
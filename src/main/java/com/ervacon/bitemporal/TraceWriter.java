@@ -0,0 +1,24 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import java.util.List;
+
+/**
+ * Strategy persisting {@link TraceChange}s, used by a {@link WriteBehindBuffer} to write the changes it queued.
+ *
+ * @see JdbcTraceWriter
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public interface TraceWriter {
+
+	/**
+	 * Persist given changes, all or nothing. A bitemporal appears in at most one of the changes, and changes to
+	 * the same bitemporal passed in earlier calls have already been persisted.
+	 */
+	public void write(List<TraceChange> changes) throws Exception;
+}
@@ -0,0 +1,84 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Strategy to convert the values tracked by a bitemporal trace to bytes and back, used when storing values
+ * outside of the Java heap.
+ * <p>
+ * Codecs never see null values: those are handled by the code using the codec.
+ *
+ * @see OffHeapBitemporalTrace
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public interface ValueCodec<V> {
+
+	/**
+	 * Encode given (non-null) value.
+	 */
+	public byte[] encode(V value);
+
+	/**
+	 * Decode a value from given bytes, previously obtained from {@link #encode(Object)}.
+	 */
+	public V decode(byte[] bytes);
+
+	/**
+	 * Returns a codec for strings, using UTF-8.
+	 */
+	public static ValueCodec<String> utf8() {
+		return new ValueCodec<String>() {
+			@Override
+			public byte[] encode(String value) {
+				return value.getBytes(StandardCharsets.UTF_8);
+			}
+
+			@Override
+			public String decode(byte[] bytes) {
+				return new String(bytes, StandardCharsets.UTF_8);
+			}
+		};
+	}
+
+	/**
+	 * Returns a codec using Java serialization. This works for any serializable value, but is not very compact.
+	 */
+	public static <V> ValueCodec<V> serialization() {
+		return new ValueCodec<V>() {
+			@Override
+			public byte[] encode(V value) {
+				ByteArrayOutputStream buf = new ByteArrayOutputStream();
+				try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+					out.writeObject(value);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Cannot serialize value " + value, e);
+				}
+				return buf.toByteArray();
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public V decode(byte[] bytes) {
+				try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+					return (V) in.readObject();
+				} catch (IOException e) {
+					throw new UncheckedIOException("Cannot deserialize value", e);
+				} catch (ClassNotFoundException e) {
+					throw new IllegalStateException("Cannot deserialize value", e);
+				}
+			}
+		};
+	}
+}
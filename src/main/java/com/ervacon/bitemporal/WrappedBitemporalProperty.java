@@ -9,27 +9,50 @@ import org.threeten.extra.Interval;
 
 /**
  * {@link BitemporalProperty} implementation that uses {@link BitemporalWrapper}s.
+ * <p>
+ * All wrapped bitemporal properties share a single stateless {@link ValueAccessor}, so creating one only
+ * allocates the property and its trace. Entities that read a property frequently can cache it, see
+ * {@link BitemporalProperty}.
  *
  * @author Erwin Vervaet
  * @author Christophe Vanfleteren
  */
 public class WrappedBitemporalProperty<V> extends BitemporalProperty<V, BitemporalWrapper<V>> {
 
+	@SuppressWarnings("rawtypes")
+	private static final WrapperAccessor ACCESSOR = new WrapperAccessor();
+
+	@SuppressWarnings("unchecked")
 	public WrappedBitemporalProperty(Collection<? extends Bitemporal> data) {
-		super(data, new ValueAccessor<V, BitemporalWrapper<V>>() {
-			@Override
-			public V extractValue(BitemporalWrapper<V> t) {
-				if (t == null) {
-					return null;
-				} else {
-					return t.getValue();
-				}
-			}
+		super(data, ACCESSOR);
+	}
+
+	@SuppressWarnings("unchecked")
+	public WrappedBitemporalProperty(BitemporalTrace trace) {
+		super(trace, ACCESSOR);
+	}
+
+	/**
+	 * Stateless accessor for {@link BitemporalWrapper}s.
+	 */
+	private static class WrapperAccessor<V> implements ValueAccessor<V, BitemporalWrapper<V>> {
 
-			@Override
-			public BitemporalWrapper<V> wrapValue(V value, Interval validityInterval) {
-				return new BitemporalWrapper<>(value, validityInterval);
+		@Override
+		public V extractValue(BitemporalWrapper<V> t) {
+			if (t == null) {
+				return null;
+			} else {
+				return t.getValue();
 			}
-		});
+		}
+
+		@Override
+		public BitemporalWrapper<V> wrapValue(V value, Interval validityInterval) {
+			return new BitemporalWrapper<>(value, validityInterval);
+		}
+
+		private Object readResolve() {
+			return ACCESSOR;
+		}
 	}
 }
@@ -0,0 +1,88 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * A {@link BitemporalTrace} queueing the changes to its persistent form in a {@link WriteBehindBuffer}: an insert
+ * for every bitemporal added to the trace, and an update for every bitemporal ended by the trace. The buffer writes
+ * them in the background.
+ * <p>
+ * The data collection of the trace should not be managed by an ORM tool, since the buffer takes care of persisting
+ * the changes. Typically the data collection is loaded by a query, and the trace is discarded once manipulated.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class WriteBehindBitemporalTrace extends BitemporalTrace {
+
+	private final Collection<Bitemporal> data;
+	private final Object owner;
+	private final WriteBehindBuffer buffer;
+
+	/**
+	 * Create a new trace working on top of given data collection, belonging to specified owner, queueing changes in
+	 * given buffer.
+	 */
+	public WriteBehindBitemporalTrace(Collection<Bitemporal> data, Object owner, WriteBehindBuffer buffer) {
+		super(new Recording(data, owner, buffer));
+		this.data = data;
+		this.owner = requireNonNull(owner, "The owner is required");
+		this.buffer = requireNonNull(buffer, "The write-behind buffer is required");
+	}
+
+	public Object getOwner() {
+		return owner;
+	}
+
+	@Override
+	public boolean isBackedBy(Collection<?> data) {
+		return this.data == data;
+	}
+
+	@Override
+	protected void end(Bitemporal bt) {
+		super.end(bt);
+		buffer.record(TraceChange.update(owner, bt));
+	}
+
+	/**
+	 * A view of the data collection queueing an insert for every added bitemporal.
+	 */
+	private static class Recording extends AbstractCollection<Bitemporal> {
+
+		private final Collection<Bitemporal> data;
+		private final Object owner;
+		private final WriteBehindBuffer buffer;
+
+		public Recording(Collection<Bitemporal> data, Object owner, WriteBehindBuffer buffer) {
+			this.data = requireNonNull(data, "The bitemporal data is required");
+			this.owner = owner;
+			this.buffer = buffer;
+		}
+
+		@Override
+		public Iterator<Bitemporal> iterator() {
+			return data.iterator();
+		}
+
+		@Override
+		public int size() {
+			return data.size();
+		}
+
+		@Override
+		public boolean add(Bitemporal bt) {
+			data.add(bt);
+			buffer.record(TraceChange.insert(owner, bt));
+			return true;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues the changes made to {@link WriteBehindBitemporalTrace}s and writes them in the background using a
+ * {@link TraceWriter}, so manipulating a trace doesn't have to wait for the database.
+ * <p>
+ * Queued changes are coalesced per owner: a bitemporal that is added and ended before being written results in a
+ * single insert with its final recording interval, and only the last update of a bitemporal is written. All queued
+ * changes are written together, in a single call of the trace writer, when
+ * <ul>
+ * <li>a {@link #flush() flush} is requested,</li>
+ * <li>the number of queued changes reaches the batch size, or</li>
+ * <li>the flush interval (if any) elapses.</li>
+ * </ul>
+ * Changes are written by a single background thread, in the order they were made. If writing fails, the changes are
+ * queued again and retried on the next flush. Queued changes are lost when the process dies: use the future
+ * returned by {@link #flush()} to find out when changes are durable.
+ * <p>
+ * Objects of this class are thread-safe, but the traces using the buffer are not. Close the buffer to write the
+ * remaining changes and stop the background thread: closing fails if those changes cannot be written.
+ *
+ * @author Erwin Vervaet
+ * @author Christophe Vanfleteren
+ */
+public class WriteBehindBuffer implements AutoCloseable {
+
+	private final TraceWriter writer;
+	private final int batchSize;
+	private final ScheduledExecutorService executor;
+
+	private Map<Object, Map<Key, TraceChange>> pending = new LinkedHashMap<>();
+	private int pendingCount;
+	private boolean flushRequested;
+
+	/**
+	 * Create a new buffer writing changes using given writer, once the number of queued changes reaches specified
+	 * batch size or a flush is requested.
+	 */
+	public WriteBehindBuffer(TraceWriter writer, int batchSize) {
+		this(writer, batchSize, null);
+	}
+
+	/**
+	 * Create a new buffer writing changes using given writer, once the number of queued changes reaches specified
+	 * batch size, a flush is requested or the flush interval elapses.
+	 */
+	public WriteBehindBuffer(TraceWriter writer, int batchSize, Duration flushInterval) {
+		this.writer = requireNonNull(writer, "The trace writer is required");
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("The batch size should be at least 1");
+		}
+		this.batchSize = batchSize;
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "bitemporal-write-behind");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (flushInterval != null) {
+			long nanos = flushInterval.toNanos();
+			executor.scheduleWithFixedDelay(this::flush, nanos, nanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Returns the number of changes queued and not yet being written.
+	 */
+	public synchronized int getPendingCount() {
+		return pendingCount;
+	}
+
+	/**
+	 * Queue given change.
+	 */
+	public synchronized void record(TraceChange change) {
+		Map<Key, TraceChange> changes = pending.computeIfAbsent(change.getOwner(), owner -> new LinkedHashMap<>());
+		Key key = new Key(change.getBitemporal());
+		TraceChange previous = changes.get(key);
+		if (previous == null) {
+			changes.put(key, change);
+			pendingCount++;
+		} else {
+			changes.put(key, previous.coalesce(change));
+		}
+		if (pendingCount >= batchSize && !flushRequested) {
+			flushRequested = true;
+			flush();
+		}
+	}
+
+	/**
+	 * Write all changes queued so far in the background.
+	 * @return a future completing once those changes have been written, or completing exceptionally if writing
+	 * failed
+	 */
+	public CompletableFuture<Void> flush() {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				write();
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException("Cannot write bitemporal trace changes", e);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Write the remaining changes and stop the background thread.
+	 * @throws ExecutionException if the remaining changes could not be written; they are lost
+	 */
+	@Override
+	public void close() throws InterruptedException, ExecutionException {
+		try {
+			flush().get();
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void write() throws Exception {
+		Map<Object, Map<Key, TraceChange>> changes;
+		synchronized (this) {
+			changes = pending;
+			pending = new LinkedHashMap<>();
+			pendingCount = 0;
+			flushRequested = false;
+		}
+		if (changes.isEmpty()) {
+			return;
+		}
+
+		List<TraceChange> batch = new ArrayList<>();
+		changes.values().forEach(owned -> batch.addAll(owned.values()));
+		try {
+			writer.write(batch);
+		} catch (Exception e) {
+			requeue(changes);
+			throw e;
+		}
+	}
+
+	/**
+	 * Queue given changes, that failed to be written, again in front of the changes queued in the meantime.
+	 */
+	private synchronized void requeue(Map<Object, Map<Key, TraceChange>> failed) {
+		Map<Object, Map<Key, TraceChange>> later = pending;
+		pending = failed;
+		pendingCount = 0;
+		failed.values().forEach(owned -> pendingCount += owned.size());
+		later.values().forEach(owned -> owned.values().forEach(this::record));
+	}
+
+	/**
+	 * Identifies a bitemporal by identity, whatever its equals method does.
+	 */
+	private static final class Key {
+
+		private final Bitemporal bitemporal;
+
+		public Key(Bitemporal bitemporal) {
+			this.bitemporal = bitemporal;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && ((Key) obj).bitemporal == bitemporal;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(bitemporal);
+		}
+	}
+}
@@ -36,6 +36,8 @@ http://www.martinfowler.com/eaaDev/timeNarrative.html
 __author__  = "Erwin Vervaet"
 
 
+from bisect import bisect_left
+from bisect import bisect_right
 from datetime import date
 from datetime import time
 from datetime import datetime
@@ -229,6 +231,12 @@ class BitemporalTrace:
 		# copy the bitemporal to make sure we have a fresh recording interval
 		self.data.append(bt.copyWith(bt.validity))
 
+	def end(self, valid_on):
+		"""End the bitemporals valid on given date, as known now. This will essentially forget their values.
+		"""
+		for bt in self.get(valid_on, TimeFrame.reference_datetime()):
+			bt.end()
+
 	def _sanity_check(self):
 		for bt in self.data:
 			if bt.recording.start > TimeFrame.reference_datetime():
@@ -239,6 +247,183 @@ class BitemporalTrace:
 
 
 
+class IndexedBitemporalTrace(BitemporalTrace):
+	"""A bitemporal trace that keeps an index of the current knowledge.
+
+	The bitemporals currently known (those with an open recording interval) are kept sorted on the start of their
+	validity interval, so point queries, range queries and additions use a binary search (bisect) instead of
+	scanning all trace data. Queries about past knowledge still scan the trace data. The trace data itself is
+	kept exactly as a plain BitemporalTrace would, so both can be used interchangeably.
+
+	The index is rebuilt when the trace data is modified directly, as long as that changes its length.
+	"""
+
+	def __init__(self, data = []):
+		"""Create a new indexed bitemporal trace, potentially using a given list of trace data, which will
+		be copied.
+		"""
+		BitemporalTrace.__init__(self, data)
+		self._reindex()
+
+	def get(self, valid_on, known_on):
+		"""Returns the bitemporals valid on given date as known on given datetime.
+		"""
+		if not self._knows(known_on):
+			return BitemporalTrace.get(self, valid_on, known_on)
+		i = bisect_right(self._starts, valid_on) - 1
+		if i >= 0 and valid_on in self._current[i].validity:
+			return [self._current[i]]
+		return []
+
+	def get_range(self, validity, known_on = None):
+		"""Returns the bitemporals valid during some part of given validity interval as known on given datetime,
+		sorted on their validity interval.
+		"""
+		known_on = known_on or TimeFrame.reference_datetime()
+		if not self._knows(known_on) or not validity.start <= validity.end:
+			result = [bt for bt in self.get_history(known_on) if validity.overlaps(bt.validity)]
+			result.sort(key = lambda bt: (bt.validity.start, bt.validity.end))
+			return result
+		current, empties = self._overlapping(validity)
+		result = [self._current[i] for i in current] + [self._empties[i] for i in empties]
+		result.sort(key = lambda bt: (bt.validity.start, bt.validity.end))
+		return result
+
+	def add(self, bt):
+		"""Add given bitemporal to this trace, manipulating the existing trace data to maintain bitemporal
+		invariants.
+		"""
+		self._sanity_check()
+		self._add(bt)
+
+	def add_all(self, bts):
+		"""Add given bitemporals to this trace, in order. This has the same effect as adding them one by one,
+		but only checks the trace data once.
+		"""
+		self._sanity_check()
+		for bt in bts:
+			self._add(bt)
+
+	def end(self, valid_on):
+		"""End the bitemporals valid on given date, as known now. This will essentially forget their values.
+		"""
+		now = TimeFrame.reference_datetime()
+		if not self._knows(now):
+			BitemporalTrace.end(self, valid_on)
+			self._reindex()
+			return
+		i = bisect_right(self._starts, valid_on) - 1
+		if i >= 0 and valid_on in self._current[i].validity:
+			self._current[i].end()
+			del self._starts[i]
+			del self._current[i]
+		self._latest = max(self._latest, now)
+
+	# internal
+	def _add(self, bt):
+		now = TimeFrame.reference_datetime()
+		if not self._knows(now) or not bt.validity.start <= bt.validity.end:
+			BitemporalTrace.add(self, bt)
+			self._reindex()
+			return
+
+		to_end, to_add = [], []
+		current, empties = self._overlapping(bt.validity)
+
+		if current:
+			valid_on_start_of_bt = self._current[current[0]]
+			if valid_on_start_of_bt.validity.start < bt.validity.start:
+				new_validity = Interval(valid_on_start_of_bt.validity.start, bt.validity.start)
+				to_add.append(valid_on_start_of_bt.copyWith(new_validity))
+
+		if bt.validity.end < date.max:
+			i = bisect_right(self._starts, bt.validity.end) - 1
+			if i >= 0 and bt.validity.end in self._current[i].validity:
+				valid_on_end_of_bt = self._current[i]
+				if valid_on_end_of_bt.validity.start < bt.validity.end:
+					new_validity = Interval(bt.validity.end, valid_on_end_of_bt.validity.end)
+					to_add.append(valid_on_end_of_bt.copyWith(new_validity))
+
+		for i in reversed(current):
+			to_end.append(self._current[i])
+			del self._starts[i]
+			del self._current[i]
+		for i in reversed(empties):
+			to_end.append(self._empties[i])
+			del self._empty_starts[i]
+			del self._empties[i]
+
+		for needs_to_end in to_end:
+			needs_to_end.end()
+		for needs_to_be_added in to_add:
+			self.data.append(needs_to_be_added)
+			self._put(needs_to_be_added)
+
+		# copy the bitemporal to make sure we have a fresh recording interval
+		copy = bt.copyWith(bt.validity)
+		self.data.append(copy)
+		self._put(copy)
+
+		self._latest = max(self._latest, now, copy.recording.start)
+		self._latest_start = max(self._latest_start, copy.recording.start)
+		self._indexed_length = len(self.data)
+
+	def _overlapping(self, validity):
+		"""Returns the positions of the indexed bitemporals overlapping given (non inverted) validity interval,
+		both in the current list and in the empties list.
+		"""
+		first = bisect_left(self._starts, validity.start)
+		if first > 0 and self._current[first - 1].validity.end > validity.start:
+			first -= 1
+		last = bisect_left(self._starts, validity.end)
+		current = range(first, max(first, last))
+		empties = range(bisect_right(self._empty_starts, validity.start), bisect_left(self._empty_starts, validity.end))
+		return list(current), list(empties)
+
+	def _put(self, bt):
+		if bt.validity.start < bt.validity.end:
+			i = bisect_left(self._starts, bt.validity.start)
+			self._starts.insert(i, bt.validity.start)
+			self._current.insert(i, bt)
+		else:
+			i = bisect_left(self._empty_starts, bt.validity.start)
+			self._empty_starts.insert(i, bt.validity.start)
+			self._empties.insert(i, bt)
+
+	def _knows(self, known_on):
+		if len(self.data) != self._indexed_length:
+			self._reindex()
+		return self._usable and self._latest <= known_on < datetime.max
+
+	def _reindex(self):
+		self._starts, self._current = [], []
+		self._empty_starts, self._empties = [], []
+		self._latest = self._latest_start = datetime.min
+		self._usable = True
+		self._indexed_length = len(self.data)
+		for bt in self.data:
+			self._latest_start = max(self._latest_start, bt.recording.start)
+			if bt.recording.end == datetime.max:
+				self._put(bt)
+			else:
+				self._latest = max(self._latest, bt.recording.end)
+		self._latest = max(self._latest, self._latest_start)
+		for i in range(1, len(self._current)):
+			if self._current[i - 1].validity.end > self._current[i].validity.start:
+				self._usable = False
+		for start in self._empty_starts:
+			i = bisect_left(self._starts, start) - 1
+			if i >= 0 and self._current[i].validity.end > start:
+				self._usable = False
+
+	def _sanity_check(self):
+		if len(self.data) != self._indexed_length:
+			self._reindex()
+		if self._latest_start > TimeFrame.reference_datetime():
+			raise Exception("Cannot manipulate bitemporal trace; trace contains data from the future")
+
+
+
 class BitemporalProperty:
 	"""A bitemporal property of a class.
 
@@ -296,8 +481,7 @@ class BitemporalProperty:
 	def end(self, valid_on = None):
 		"""End the value valid on specified date, as known now. This will essentially forget that value.
 		"""
-		for bt in self.trace.get(valid_on or TimeFrame.reference_date(), TimeFrame.reference_datetime()):
-			bt.end()
+		self.trace.end(valid_on or TimeFrame.reference_date())
 
 	def has_value(self, valid_on = None, known_on = None):
 		"""Returns whether or not a valid and known value is available for specified validity date
@@ -8,6 +8,7 @@ Unit tests for the bitemporal module.
 __author__  = "Erwin Vervaet"
 
 
+import random
 import unittest
 from bitemporal import *
 from datetime import timedelta
@@ -242,16 +243,79 @@ class RawBitemporalTest(unittest.TestCase):
 		self.assertEquals(2, len(trace.get_evolution(date.today())))
 
 
+class IndexedBitemporalTraceTest(unittest.TestCase):
+
+	def tearDown(self):
+		TimeFrame.set_reference(None)
+
+	def test_get(self):
+		trace = IndexedBitemporalTrace()
+		trace.add(BitemporalWrapper("value"))
+		self.assertEquals("value", trace.get(date.today(), datetime.now())[0].value)
+		self.assertEquals(0, len(trace.get(date.today() + timedelta(days = -3), datetime.now())))
+		self.assertEquals(0, len(trace.get(date.today(), datetime.now() + timedelta(days = -3))))
+
+	def test_get_range(self):
+		TimeFrame.set_reference(datetime(2010, 1, 1))
+		trace = IndexedBitemporalTrace()
+		trace.add_all([BitemporalWrapper("foo", Interval(date(2000, 1, 1), date.max)),
+				BitemporalWrapper("bar", Interval(date(2005, 1, 1), date(2006, 1, 1))),
+				BitemporalWrapper("baz", Interval(date(2007, 1, 1), date(2008, 1, 1)))])
+		self.assertEquals(["foo", "bar", "foo", "baz", "foo"],
+				[bt.value for bt in trace.get_range(Interval(date(1990, 1, 1), date.max))])
+		self.assertEquals(["bar", "foo"],
+				[bt.value for bt in trace.get_range(Interval(date(2005, 6, 1), date(2006, 6, 1)))])
+		TimeFrame.set_reference(datetime(2011, 1, 1))
+		trace.add(BitemporalWrapper("qux", Interval(date(2005, 1, 1), date(2006, 1, 1))))
+		self.assertEquals(["qux"], [bt.value for bt in trace.get_range(Interval(date(2005, 1, 1), date(2006, 1, 1)))])
+		bar = trace.get_range(Interval(date(2005, 1, 1), date(2006, 1, 1)), datetime(2010, 1, 1))
+		self.assertEquals(["bar"], [bt.value for bt in bar])
+
+	def test_matches_plain_trace(self):
+		rnd = random.Random(42)
+		plain = BitemporalTrace()
+		indexed = IndexedBitemporalTrace()
+		recorded = datetime(2000, 1, 1)
+		for i in range(300):
+			recorded += timedelta(days = rnd.randint(0, 5))
+			TimeFrame.set_reference(recorded)
+			start = date(1990, 1, 1) + timedelta(days = rnd.randint(0, 3650))
+			choice = rnd.randint(0, 4)
+			if choice == 0:
+				plain.end(start)
+				indexed.end(start)
+			else:
+				if choice == 1:
+					validity = Interval(start, date.max)
+				elif choice == 2:
+					validity = Interval(start, start)
+				else:
+					validity = Interval(start, start + timedelta(days = rnd.randint(1, 1000)))
+				plain.add(BitemporalWrapper("v%d" % i, validity))
+				indexed.add(BitemporalWrapper("v%d" % i, validity))
+			self.assertEquals(str(plain), str(indexed))
+
+			valid_on = date(1990, 1, 1) + timedelta(days = rnd.randint(0, 4000))
+			for known_on in [recorded, datetime(2000, 1, 1) + timedelta(days = rnd.randint(0, i))]:
+				self.assertEquals([str(bt) for bt in plain.get(valid_on, known_on)],
+						[str(bt) for bt in indexed.get(valid_on, known_on)])
+				validity = Interval(valid_on, valid_on + timedelta(days = rnd.randint(0, 1000)))
+				expected = [bt for bt in plain.get_history(known_on) if validity.overlaps(bt.validity)]
+				expected.sort(key = lambda bt: (bt.validity.start, bt.validity.end))
+				self.assertEquals([str(bt) for bt in expected],
+						[str(bt) for bt in indexed.get_range(validity, known_on)])
+
+
 """
 The example scenario described on Wikipedia:
 http://en.wikipedia.org/wiki/Temporal_database
 """
 class Person:
 
-	def __init__(self, name):
+	def __init__(self, name, trace = BitemporalTrace):
 		self.name = name
-		self.address = BitemporalProperty()
-		self.alive = BitemporalProperty()
+		self.address = BitemporalProperty(trace())
+		self.alive = BitemporalProperty(trace())
 
 	def __str__(self):
 		return self.name
@@ -273,12 +337,18 @@ class ScenarioTest(unittest.TestCase):
 		TimeFrame.set_reference(None)
 
 	def test_scenario(self):
+		self._scenario(BitemporalTrace)
+
+	def test_indexed_scenario(self):
+		self._scenario(IndexedBitemporalTrace)
+
+	def _scenario(self, trace):
 		# 3/4/1975 John Doe is born
 		# nothing happens
 		
 		# 4/4/1975 John's father registers the baby
 		TimeFrame.set_reference(date(1975, 4, 4))
-		john_doe = Person("John Doe")
+		john_doe = Person("John Doe", trace)
 		john_doe.alive.assign(True, Interval(date(1975, 4, 3), date.max))
 		john_doe.address.assign(Address("Smallville"), Interval(date(1975, 4, 3), date.max))
 
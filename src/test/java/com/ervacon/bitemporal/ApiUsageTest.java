@@ -7,8 +7,14 @@ package com.ervacon.bitemporal;
 import static com.ervacon.bitemporal.TimeUtils.day;
 import static com.ervacon.bitemporal.TimeUtils.from;
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertSame;
 import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
 
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
 import org.junit.After;
 import org.junit.Test;
 
@@ -41,4 +47,50 @@ public class ApiUsageTest {
 				from(day(1, 1, 2000)),
 				pete.address().get().getValidityInterval());
 	}
+
+	@Test
+	public void testCachedPropertyHandle() {
+		Person pete = new Person("Pete");
+		WrappedBitemporalProperty<Address> address = pete.address();
+		assertSame(address, pete.address());
+
+		TimeUtils.setReference(day(1, 1, 2000));
+		address.set(new Address("Foostreet", "Bartown", "USA"));
+		assertSame(address, pete.address());
+		assertEquals("Foostreet", pete.address().now().getLine1());
+		assertSame(address.get(), address.getTrace().find(day(1, 1, 2000), day(1, 1, 2000)));
+		assertNull(address.getTrace().find(day(1, 1, 1999), day(1, 1, 2000)));
+	}
+
+	@Test
+	public void testPrimitiveApiUsage() {
+		TimeUtils.setReference(day(1, 1, 2000));
+		LongBitemporalProperty balance = new LongBitemporalProperty(new ArrayList<>());
+		balance.set(100L);
+		TimeUtils.setReference(day(1, 1, 2001));
+		balance.set(250L, from(day(1, 6, 2000)));
+
+		assertEquals(250L, balance.getAsLong());
+		assertEquals(100L, balance.getAsLong(day(1, 1, 2000)));
+		assertEquals(100L, balance.getAsLong(day(1, 6, 2000), day(1, 1, 2000)));
+		assertEquals(Long.valueOf(250L), balance.now());
+		try {
+			balance.getAsLong(day(1, 1, 1999));
+			fail();
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+
+		DoubleBitemporalProperty rate = new DoubleBitemporalProperty(new ArrayList<>());
+		rate.set(0.25, from(day(1, 1, 2000)));
+		assertEquals(0.25, rate.getAsDouble(day(1, 1, 2000)), 0.0);
+
+		Person pete = new Person("Pete");
+		pete.alive().set(true);
+		assertTrue(pete.alive().getAsBoolean());
+		TimeUtils.setReference(day(1, 1, 2002));
+		pete.alive().set(false);
+		assertFalse(pete.alive().getAsBoolean());
+		assertTrue(pete.alive().getAsBoolean(day(1, 1, 2001)));
+	}
 }
@@ -0,0 +1,78 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.day;
+import static com.ervacon.bitemporal.TimeUtils.from;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+public class BitemporalMapTest {
+
+	@After
+	public void tearDown() throws Exception {
+		TimeUtils.clearReference();
+	}
+
+	@Test
+	public void testPhoneNumbers() {
+		List<Bitemporal> data = new ArrayList<>();
+		BitemporalMap<String, String> phones = new BitemporalMap<>(data);
+
+		TimeUtils.setReference(day(1, 1, 2000));
+		phones.put("home", "555-1234", from(day(1, 1, 2000)));
+		phones.put("work", "555-9999", from(day(1, 6, 2000)));
+
+		TimeUtils.setReference(day(1, 1, 2001));
+		phones.put("home", "555-4321", from(day(1, 9, 2000)));
+		phones.remove("work", day(1, 1, 2001));
+
+		assertEquals(4, data.size());
+		assertEquals(3, phones.get("home").getTrace().getData().size());
+		assertEquals(new HashSet<>(Arrays.asList("home", "work")), phones.keys());
+
+		assertEquals("555-1234", phones.on("home", day(1, 8, 2000), day(1, 1, 2001)));
+		assertEquals("555-4321", phones.on("home", day(1, 9, 2000), day(1, 1, 2001)));
+		assertEquals("555-1234", phones.on("home", day(1, 9, 2000), day(1, 1, 2000)));
+		assertNull(phones.on("work", day(1, 9, 2000), day(1, 1, 2001)));
+		assertEquals("555-9999", phones.on("work", day(1, 9, 2000), day(1, 1, 2000)));
+		assertNull(phones.on("mobile", day(1, 9, 2000), day(1, 1, 2001)));
+
+		assertEquals(1, phones.on(day(1, 9, 2000)).size());
+		assertEquals(2, phones.on(day(1, 9, 2000), day(1, 1, 2000)).size());
+
+		// a second map on the same data sees the same thing
+		BitemporalMap<String, String> copy = new BitemporalMap<>(data);
+		assertEquals(phones.on(day(1, 9, 2000), day(1, 1, 2000)), copy.on(day(1, 9, 2000), day(1, 1, 2000)));
+		copy.put("mobile", "555-0000", interval(day(1, 1, 2000), day(1, 1, 2010)));
+		assertEquals("555-0000", phones.on("mobile", day(1, 1, 2005), day(1, 1, 2001)));
+	}
+
+	@Test
+	public void testNationalities() {
+		BitemporalSet<String> nationalities = new BitemporalSet<>(new ArrayList<>());
+
+		TimeUtils.setReference(day(1, 1, 2000));
+		nationalities.add("BE", from(day(3, 4, 1975)));
+		TimeUtils.setReference(day(1, 1, 2010));
+		nationalities.add("US", from(day(1, 1, 2009)));
+
+		assertTrue(nationalities.contains("BE", day(1, 1, 2009), day(1, 1, 2010)));
+		assertTrue(nationalities.contains("US", day(1, 1, 2009), day(1, 1, 2010)));
+		assertFalse(nationalities.contains("US", day(1, 1, 2009), day(1, 1, 2000)));
+		assertEquals(new HashSet<>(Arrays.asList("BE", "US")), nationalities.now());
+		assertEquals(new HashSet<>(Arrays.asList("BE")), nationalities.on(day(1, 1, 2008)));
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.day;
+import static com.ervacon.bitemporal.TimeUtils.from;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Test;
+
+public class BitemporalRepositoryTest {
+
+	@After
+	public void tearDown() throws Exception {
+		TimeUtils.clearReference();
+	}
+
+	@Test
+	public void testConcurrentWrites() throws Exception {
+		try (BitemporalRepository<Integer, String> repository = new BitemporalRepository<>(4)) {
+			ExecutorService clients = Executors.newFixedThreadPool(8);
+			List<Future<?>> results = new ArrayList<>();
+			for (int client = 0; client < 8; client++) {
+				int first = client * 100;
+				results.add(clients.submit(() -> {
+					List<CompletableFuture<Void>> writes = new ArrayList<>();
+					for (int id = first; id < first + 100; id++) {
+						TimeUtils.setReference(day(1, 1, 2000));
+						writes.add(repository.set(id, "A" + id, from(day(1, 1, 1990))));
+						TimeUtils.setReference(day(1, 1, 2001));
+						writes.add(repository.set(id, "B" + id, from(day(1, 1, 1995))));
+					}
+					writes.forEach(CompletableFuture::join);
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+			clients.shutdown();
+
+			for (int id = 0; id < 800; id++) {
+				assertEquals("A" + id, repository.on(id, day(1, 1, 1994), day(1, 1, 2002)));
+				assertEquals("B" + id, repository.on(id, day(1, 1, 1996), day(1, 1, 2002)));
+				assertEquals("A" + id, repository.on(id, day(1, 1, 1996), day(1, 1, 2000)));
+			}
+			assertNull(repository.on(800, day(1, 1, 1996)));
+
+			TimeUtils.setReference(day(1, 1, 2002));
+			repository.end(1, day(1, 1, 1996)).join();
+			assertNull(repository.on(1, day(1, 1, 1996)));
+		}
+	}
+
+	@Test
+	public void testFailedWrite() throws Exception {
+		try (BitemporalRepository<String, String> repository = new BitemporalRepository<>(2)) {
+			TimeUtils.setReference(day(1, 1, 2001));
+			repository.set("x", "A").join();
+			TimeUtils.setReference(day(1, 1, 2000));
+			try {
+				repository.set("x", "B").join();
+				fail();
+			} catch (CompletionException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+			assertEquals("A", repository.on("x", day(1, 1, 2001), day(1, 1, 2001)));
+		}
+	}
+}
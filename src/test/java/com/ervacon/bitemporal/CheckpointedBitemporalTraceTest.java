@@ -0,0 +1,94 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.day;
+import static com.ervacon.bitemporal.TimeUtils.from;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+
+public class CheckpointedBitemporalTraceTest {
+
+	@After
+	public void tearDown() throws Exception {
+		TimeUtils.clearReference();
+	}
+
+	@Test
+	public void testPastKnowledge() {
+		Random random = new Random(42);
+		CheckpointedBitemporalTrace checkpointed = new CheckpointedBitemporalTrace(new ArrayList<>(), 10);
+		BitemporalTrace plain = new BitemporalTrace(new ArrayList<>());
+
+		List<Instant> recordedOn = new ArrayList<>();
+		Instant recordedAt = day(1, 1, 2000);
+		for (int i = 0; i < 500; i++) {
+			recordedAt = recordedAt.plus(random.nextInt(3), ChronoUnit.DAYS);
+			TimeUtils.setReference(recordedAt);
+			recordedOn.add(recordedAt);
+			Instant start = day(1, 1, 1990).plus(random.nextInt(3650), ChronoUnit.DAYS);
+			if (random.nextInt(5) == 0) {
+				checkpointed.end(start);
+				plain.end(start);
+			} else {
+				Instant end = start.plus(1 + random.nextInt(1000), ChronoUnit.DAYS);
+				checkpointed.add(new BitemporalWrapper<>("v" + i, interval(start, end)));
+				plain.add(new BitemporalWrapper<>("v" + i, interval(start, end)));
+			}
+		}
+		assertEquals(plain.toString(), checkpointed.toString());
+		assertTrue(checkpointed.getCheckpointCount() > 1);
+
+		assertSameKnowledge(plain, checkpointed, recordedOn, random);
+
+		// modifying the data behind the back of the trace drops the checkpoints
+		checkpointed.getData().add(new BitemporalWrapper<>("behind", from(day(1, 1, 1990))));
+		plain.getData().add(new BitemporalWrapper<>("behind", from(day(1, 1, 1990))));
+		assertSameKnowledge(plain, checkpointed, recordedOn, random);
+		assertEquals(0, checkpointed.getCheckpointCount());
+	}
+
+	@Test
+	public void testPastReferenceReads() {
+		CheckpointedBitemporalTrace checkpointed = new CheckpointedBitemporalTrace(new ArrayList<>(), 2);
+		BitemporalTrace plain = new BitemporalTrace(new ArrayList<>());
+		for (int i = 0; i < 10; i++) {
+			TimeUtils.setReference(day(1, 1, 2000 + i));
+			checkpointed.add(new BitemporalWrapper<>("v" + i, from(day(1, 1, 1990 + i))));
+			plain.add(new BitemporalWrapper<>("v" + i, from(day(1, 1, 1990 + i))));
+		}
+		assertEquals(5, checkpointed.getCheckpointCount());
+
+		// an auditor looking at the trace as of some past date
+		for (int i = 0; i < 10; i++) {
+			Instant past = day(2, 1, 2000 + i);
+			TimeUtils.setReference(past);
+			Instant validOn = day(1, 1, 2005);
+			assertEquals(plain.get(validOn, past).toString(), checkpointed.get(validOn, past).toString());
+			assertEquals(plain.getHistory(past).toString(), checkpointed.getHistory(past).toString());
+			assertEquals(5, checkpointed.getCheckpointCount());
+		}
+	}
+
+	private static void assertSameKnowledge(BitemporalTrace expected, BitemporalTrace actual, List<Instant> knownOn,
+			Random random) {
+		for (Instant instant : knownOn) {
+			Instant validOn = day(1, 1, 1990).plus(random.nextInt(5000), ChronoUnit.DAYS);
+			assertEquals(expected.get(validOn, instant).toString(), actual.get(validOn, instant).toString());
+			assertEquals(String.valueOf(expected.find(validOn, instant)),
+					String.valueOf(actual.find(validOn, instant)));
+			assertEquals(expected.getHistory(instant).toString(), actual.getHistory(instant).toString());
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.day;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+
+public class ColumnarTraceTest {
+
+	@After
+	public void tearDown() throws Exception {
+		TimeUtils.clearReference();
+	}
+
+	@Test
+	public void testExport() throws Exception {
+		Random random = new Random(42);
+		List<String> expected = new ArrayList<>();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ColumnarTraceWriter<String, String> writer =
+				new ColumnarTraceWriter<>(bytes, ValueCodec.utf8(), ValueCodec.utf8(), 64)) {
+			for (int key = 0; key < 50; key++) {
+				WrappedBitemporalProperty<String> property = new WrappedBitemporalProperty<>(new ArrayList<>());
+				Instant recordedAt = day(1, 1, 2000);
+				for (int i = 0; i < 20; i++) {
+					recordedAt = recordedAt.plus(random.nextInt(1000), ChronoUnit.SECONDS);
+					TimeUtils.setReference(recordedAt);
+					Instant start = day(1, 1, 1990).plus(random.nextInt(3650), ChronoUnit.DAYS);
+					String value = random.nextInt(10) == 0 ? null : "value " + random.nextInt(5);
+					property.set(value, interval(start, start.plus(1 + random.nextInt(1000), ChronoUnit.DAYS)));
+				}
+				writer.write("key " + key, property);
+				for (Bitemporal bt : property.getTrace().getData()) {
+					expected.add("key " + key + "  ~  " + bt);
+				}
+			}
+			assertEquals(expected.size(), writer.getRowCount());
+		}
+		assertTrue(bytes.size() < expected.size() * 24);
+
+		List<String> actual = new ArrayList<>();
+		try (ColumnarTraceReader<String, String> reader = new ColumnarTraceReader<>(
+				new ByteArrayInputStream(bytes.toByteArray()), ValueCodec.utf8(), ValueCodec.utf8())) {
+			while (reader.next()) {
+				actual.add(reader.getKey() + "  ~  " + reader.getValidityInterval() + "  ~  "
+						+ reader.getRecordInterval() + "  ~  " + reader.getValue());
+			}
+			assertEquals(false, reader.next());
+		}
+		assertEquals(expected, actual);
+	}
+}
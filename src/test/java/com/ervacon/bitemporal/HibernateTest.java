@@ -4,8 +4,20 @@
  */
 package com.ervacon.bitemporal;
 
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+import com.ervacon.bitemporal.support.AsOfLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.OptimisticLockException;
+import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
 import org.hibernate.cfg.Configuration;
 import org.junit.After;
 import org.junit.Before;
@@ -17,7 +29,11 @@ public class HibernateTest {
 
 	@Before
 	public void setUp() throws Exception {
-		sessionFactory = new Configuration().configure().buildSessionFactory();
+		// concurrent sessions need several connections and a database that doesn't lock rows while reading
+		sessionFactory = new Configuration().configure()
+				.setProperty("hibernate.connection.pool_size", "3")
+				.setProperty("hibernate.connection.url", "jdbc:hsqldb:mem:db;hsqldb.tx=mvcc")
+				.buildSessionFactory();
 	}
 
 	@After
@@ -75,4 +91,179 @@ public class HibernateTest {
 		session.getTransaction().commit();
 		session.close();
 	}
+
+	@Test
+	public void testSplitPersistence() {
+		Session session = sessionFactory.openSession();
+		session.beginTransaction();
+		TimeUtils.setReference(TimeUtils.day(4, 4, 1975));
+		Person johnDoe = new Person("John Doe");
+		johnDoe.workAddress().set(
+				new Address("Some Street 8", "Smallville", "FL, USA"),
+				TimeUtils.from(TimeUtils.day(3, 4, 1975)));
+		session.save(johnDoe);
+		session.getTransaction().commit();
+		session.close();
+		Long id = johnDoe.getId();
+
+		session = sessionFactory.openSession();
+		session.beginTransaction();
+		johnDoe = session.get(Person.class, id);
+		TimeUtils.setReference(TimeUtils.day(27, 12, 1994));
+		johnDoe.workAddress().set(
+				new Address("Some Avenue 773", "Bigtown", "FL, USA"),
+				TimeUtils.from(TimeUtils.day(26, 8, 1994)));
+		session.getTransaction().commit();
+		session.close();
+
+		// reading the current knowledge doesn't load the history
+		session = sessionFactory.openSession();
+		session.beginTransaction();
+		johnDoe = session.get(Person.class, id);
+		SplitBitemporalTrace workAddress = (SplitBitemporalTrace) johnDoe.workAddress().getTrace();
+		assertEquals("Smallville", johnDoe.workAddress().on(TimeUtils.day(1, 1, 1994)).getLine2());
+		assertEquals("Bigtown", johnDoe.workAddress().on(TimeUtils.day(1, 1, 1995)).getLine2());
+		assertEquals(2, johnDoe.workAddress().getHistory().size());
+		assertFalse(Hibernate.isInitialized(workAddress.getHistoryData()));
+		assertEquals("Smallville",
+				johnDoe.workAddress().on(TimeUtils.day(1, 1, 1995), TimeUtils.day(1, 1, 1990)).getLine2());
+		assertEquals(2, workAddress.getCurrentData().size());
+		assertEquals(1, workAddress.getHistoryData().size());
+		session.getTransaction().commit();
+		session.close();
+	}
+
+	@Test
+	public void testAsOfLoading() {
+		Session session = sessionFactory.openSession();
+		session.beginTransaction();
+		TimeUtils.setReference(TimeUtils.day(1, 1, 2000));
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			Person person = new Person("Person " + i);
+			if (i % 5 != 0) {
+				person.address().set(new Address("Street " + i, "Smallville", "FL, USA"),
+						TimeUtils.from(TimeUtils.day(1, 1, 1990)));
+			}
+			session.save(person);
+			ids.add(person.getId());
+		}
+		session.getTransaction().commit();
+		session.close();
+
+		session = sessionFactory.openSession();
+		session.beginTransaction();
+		TimeUtils.setReference(TimeUtils.day(1, 1, 2010));
+		for (int i = 0; i < 20; i += 2) {
+			session.get(Person.class, ids.get(i)).address().set(new Address("Street " + i, "Bigtown", "FL, USA"),
+					TimeUtils.from(TimeUtils.day(1, 1, 2005)));
+		}
+		session.getTransaction().commit();
+		session.close();
+
+		session = sessionFactory.openSession();
+		session.beginTransaction();
+		AsOfLoader loader = new AsOfLoader(session, 7);
+		Map<Long, List<BitemporalWrapper<Address>>> now = loader.load("com.ervacon.bitemporal.Person", ids,
+				TimeUtils.day(1, 1, 2008), TimeUtils.day(1, 1, 2011), "address");
+		Map<Long, List<BitemporalWrapper<Address>>> before = loader.load("com.ervacon.bitemporal.Person", ids,
+				TimeUtils.day(1, 1, 2008), TimeUtils.day(1, 1, 2009), "address");
+		for (int i = 0; i < 20; i++) {
+			Person person = session.get(Person.class, ids.get(i));
+			assertEquals(person.address().on(TimeUtils.day(1, 1, 2008), TimeUtils.day(1, 1, 2011)),
+					value(now.get(ids.get(i))));
+			assertEquals(person.address().on(TimeUtils.day(1, 1, 2008), TimeUtils.day(1, 1, 2009)),
+					value(before.get(ids.get(i))));
+		}
+		assertEquals(18, now.size());
+		assertEquals("Bigtown", now.get(ids.get(0)).get(0).getValue().getLine2());
+		assertEquals("Smallville", before.get(ids.get(2)).get(0).getValue().getLine2());
+		session.getTransaction().commit();
+		session.close();
+	}
+
+	@Test
+	public void testConcurrentCorrections() throws Exception {
+		Session session = sessionFactory.openSession();
+		session.beginTransaction();
+		TimeUtils.setReference(TimeUtils.day(1, 1, 2000));
+		Person person = new Person("John Doe");
+		person.address().set(new Address("Some Street 8", "Smallville", "FL, USA"),
+				TimeUtils.from(TimeUtils.day(1, 1, 1990)));
+		session.save(person);
+		session.getTransaction().commit();
+		session.close();
+		Long id = person.getId();
+
+		// two writers load the same trace and both correct it
+		TimeUtils.setReference(TimeUtils.day(1, 1, 2010));
+		Session first = sessionFactory.openSession();
+		first.beginTransaction();
+		Session second = sessionFactory.openSession();
+		second.beginTransaction();
+		first.get(Person.class, id).address().set(new Address("Some Avenue 773", "Bigtown", "FL, USA"),
+				TimeUtils.interval(TimeUtils.day(1, 1, 1995), TimeUtils.day(1, 1, 2000)));
+		second.get(Person.class, id).address().set(new Address("Main Street 1", "Springfield", "FL, USA"),
+				TimeUtils.from(TimeUtils.day(1, 1, 2005)));
+		first.getTransaction().commit();
+		first.close();
+		try {
+			second.getTransaction().commit();
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(isConflict(e));
+		} finally {
+			second.close();
+		}
+
+		// retrying the second writer from scratch succeeds
+		int[] attempts = { 0 };
+		new OptimisticRetry(3, HibernateTest::isConflict).run(() -> {
+			attempts[0]++;
+			Session retry = sessionFactory.openSession();
+			try {
+				retry.beginTransaction();
+				Person stale = retry.get(Person.class, id);
+				if (attempts[0] == 1) {
+					// a conflicting writer sneaks in between load and commit
+					Session other = sessionFactory.openSession();
+					other.beginTransaction();
+					other.get(Person.class, id).address().set(new Address("Side Street 2", "Smallville", "FL, USA"),
+							TimeUtils.interval(TimeUtils.day(1, 1, 1990), TimeUtils.day(1, 1, 1991)));
+					other.getTransaction().commit();
+					other.close();
+				}
+				stale.address().set(new Address("Main Street 1", "Springfield", "FL, USA"),
+						TimeUtils.from(TimeUtils.day(1, 1, 2005)));
+				retry.getTransaction().commit();
+			} finally {
+				retry.close();
+			}
+		});
+		assertEquals(2, attempts[0]);
+
+		session = sessionFactory.openSession();
+		session.beginTransaction();
+		person = session.get(Person.class, id);
+		assertEquals("Side Street 2", person.address().on(TimeUtils.day(1, 6, 1990)).getLine1());
+		assertEquals("Smallville", person.address().on(TimeUtils.day(1, 1, 1992)).getLine2());
+		assertEquals("Bigtown", person.address().on(TimeUtils.day(1, 1, 1996)).getLine2());
+		assertEquals("Smallville", person.address().on(TimeUtils.day(1, 1, 2001)).getLine2());
+		assertEquals("Springfield", person.address().on(TimeUtils.day(1, 1, 2006)).getLine2());
+		assertEquals(5, person.address().getHistory().size());
+		session.getTransaction().commit();
+		session.close();
+	}
+
+	private static boolean isConflict(Throwable e) {
+		return e instanceof StaleStateException || e instanceof OptimisticLockException;
+	}
+
+	private static Address value(List<BitemporalWrapper<Address>> bitemporals) {
+		if (bitemporals == null) {
+			return null;
+		}
+		assertEquals(1, bitemporals.size());
+		return bitemporals.get(0).getValue();
+	}
 }
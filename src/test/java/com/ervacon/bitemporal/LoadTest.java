@@ -0,0 +1,253 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.day;
+import static com.ervacon.bitemporal.TimeUtils.from;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+import static junit.framework.TestCase.assertEquals;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * End-to-end load test: loads persons through Hibernate, reads them, moves them and corrects their address history,
+ * flushing every operation to an in-memory HSQLDB database. Reports throughput, latency percentiles per operation
+ * and the growth of the traces. Every operation is mirrored on an in-memory property to verify the results.
+ * <p>
+ * The load test is skipped unless enabled, e.g. <code>mvn test -Dtest=LoadTest -Dbitemporal.load.enabled=true</code>
+ * to run a short smoke test. Use system properties to run a real benchmark or soak test, e.g.
+ * <code>mvn test -Dtest=LoadTest -Dbitemporal.load.enabled=true -Dbitemporal.load.seconds=600</code>:
+ * <ul>
+ * <li>bitemporal.load.enabled: run the load test (default false)</li>
+ * <li>bitemporal.load.entities: number of persons (default 20)</li>
+ * <li>bitemporal.load.operations: number of operations (default 300)</li>
+ * <li>bitemporal.load.seconds: run for this many seconds instead of a fixed number of operations</li>
+ * <li>bitemporal.load.mix: relative weights of reads, moves and corrections (default 60,25,15)</li>
+ * <li>bitemporal.load.seed: random seed (default 42)</li>
+ * </ul>
+ */
+public class LoadTest {
+
+	private enum Operation {
+		READ, MOVE, CORRECTION
+	}
+
+	private static final boolean ENABLED = Boolean.getBoolean("bitemporal.load.enabled");
+	private static final int ENTITIES = Integer.getInteger("bitemporal.load.entities", 20);
+	private static final int OPERATIONS = Integer.getInteger("bitemporal.load.operations", 300);
+	private static final long SECONDS = Long.getLong("bitemporal.load.seconds", 0);
+	private static final String MIX = System.getProperty("bitemporal.load.mix", "60,25,15");
+	private static final long SEED = Long.getLong("bitemporal.load.seed", 42);
+
+	private SessionFactory sessionFactory;
+
+	@Before
+	public void setUp() throws Exception {
+		Assume.assumeTrue("Load test not enabled", ENABLED);
+		sessionFactory = new Configuration().configure()
+				.setProperty("hibernate.show_sql", "false")
+				.setProperty("hibernate.connection.url", "jdbc:hsqldb:mem:load")
+				.buildSessionFactory();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (sessionFactory != null) {
+			sessionFactory.close();
+		}
+		TimeUtils.clearReference();
+	}
+
+	@Test
+	public void testLoad() {
+		int[] mix = Arrays.stream(MIX.split(",")).mapToInt(weight -> Integer.parseInt(weight.trim())).toArray();
+		Random random = new Random(SEED);
+		Instant clock = day(1, 1, 2000);
+		TimeUtils.setReference(clock);
+
+		List<Long> ids = new ArrayList<>();
+		List<WrappedBitemporalProperty<Address>> expected = new ArrayList<>();
+		inTransaction(session -> {
+			for (int i = 0; i < ENTITIES; i++) {
+				Person person = new Person("Person " + i);
+				person.alive().set(true, from(day(1, 1, 1970)));
+				Address address = address(random);
+				person.address().set(address, from(day(1, 1, 1990)));
+				session.save(person);
+				ids.add(person.getId());
+
+				WrappedBitemporalProperty<Address> shadow = new WrappedBitemporalProperty<>(new ArrayList<>());
+				shadow.set(address, from(day(1, 1, 1990)));
+				expected.add(shadow);
+			}
+		});
+		long initialRows = countRows();
+
+		Map<Operation, Latencies> latencies = new EnumMap<>(Operation.class);
+		for (Operation operation : Operation.values()) {
+			latencies.put(operation, new Latencies());
+		}
+		long start = System.nanoTime();
+		long deadline = start + SECONDS * 1_000_000_000L;
+		for (int i = 0; SECONDS > 0 ? System.nanoTime() < deadline : i < OPERATIONS; i++) {
+			clock = clock.plus(1, ChronoUnit.HOURS);
+			TimeUtils.setReference(clock);
+			int entity = random.nextInt(ENTITIES);
+			Long id = ids.get(entity);
+			WrappedBitemporalProperty<Address> shadow = expected.get(entity);
+			Operation operation = pick(mix, random);
+
+			long opStart = System.nanoTime();
+			switch (operation) {
+				case READ:
+					Instant validOn = day(1, 1, 1990).plus(random.nextInt(10000), ChronoUnit.DAYS);
+					Instant knownOn = day(1, 1, 2000).plus(random.nextInt(1 + i), ChronoUnit.HOURS);
+					inTransaction(session -> {
+						Person person = session.get(Person.class, id);
+						assertEquals(shadow.now(), person.address().now());
+						assertEquals(shadow.on(validOn, knownOn), person.address().on(validOn, knownOn));
+						assertEquals(true, person.alive().getAsBoolean());
+					});
+					break;
+				case MOVE:
+					Address address = address(random);
+					inTransaction(session -> session.get(Person.class, id).address().set(address));
+					shadow.set(address);
+					break;
+				case CORRECTION:
+					Instant correctionStart = clock.minus(1 + random.nextInt(3650), ChronoUnit.DAYS);
+					Instant correctionEnd = correctionStart.plus(1 + random.nextInt(365), ChronoUnit.DAYS);
+					Address correction = address(random);
+					inTransaction(session -> session.get(Person.class, id)
+							.address().set(correction, interval(correctionStart, correctionEnd)));
+					shadow.set(correction, interval(correctionStart, correctionEnd));
+					break;
+			}
+			latencies.get(operation).add(System.nanoTime() - opStart);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		long operations = latencies.values().stream().mapToLong(Latencies::count).sum();
+		long rows = countRows();
+		System.out.println(String.format("Load test: %d entities, %d operations in %.2f s (%.1f operations/s)",
+				ENTITIES, operations, seconds, operations / seconds));
+		latencies.forEach((operation, stats) -> System.out.println(String.format(
+				"  %-10s %7d ops  p50 %8.3f ms  p90 %8.3f ms  p99 %8.3f ms  max %8.3f ms", operation, stats.count(),
+				stats.percentile(50), stats.percentile(90), stats.percentile(99), stats.percentile(100))));
+		System.out.println(String.format("  trace growth: %d -> %d rows, %.1f rows per entity",
+				initialRows, rows, (double) rows / ENTITIES));
+
+		assertEquals(expected.stream().mapToLong(shadow -> shadow.getTrace().getData().size()).sum() + ENTITIES, rows);
+	}
+
+	private void inTransaction(Consumer<Session> work) {
+		Session session = sessionFactory.openSession();
+		try {
+			session.beginTransaction();
+			work.accept(session);
+			session.getTransaction().commit();
+		} finally {
+			session.close();
+		}
+	}
+
+	private long countRows() {
+		long[] rows = new long[1];
+		inTransaction(session -> {
+			for (String entity : new String[] { "Address", "Alive" }) {
+				rows[0] += session.createQuery("select count(*) from " + entity, Long.class).uniqueResult();
+			}
+		});
+		return rows[0];
+	}
+
+	private static Operation pick(int[] mix, Random random) {
+		int choice = random.nextInt(Arrays.stream(mix).sum());
+		for (int i = 0; i < mix.length; i++) {
+			choice -= mix[i];
+			if (choice < 0) {
+				return Operation.values()[i];
+			}
+		}
+		throw new IllegalArgumentException("Invalid operation mix " + MIX);
+	}
+
+	private static Address address(Random random) {
+		return new Address("Street " + random.nextInt(1000), "Town " + random.nextInt(100), "Country");
+	}
+
+	/**
+	 * Latencies of a single kind of operation, counted in a fixed number of buckets whatever the number of
+	 * operations: 32 buckets per power of two nanoseconds, so percentiles are accurate to about 3%.
+	 */
+	private static class Latencies {
+
+		private static final int SUB_BUCKET_BITS = 5;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+		private final long[] buckets = new long[64 * SUB_BUCKETS];
+		private long count;
+		private long max;
+
+		public void add(long latency) {
+			latency = Math.max(0, latency);
+			buckets[bucket(latency)]++;
+			count++;
+			max = Math.max(max, latency);
+		}
+
+		public long count() {
+			return count;
+		}
+
+		/**
+		 * Returns given percentile, in milliseconds.
+		 */
+		public double percentile(double percentile) {
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+			long seen = 0;
+			for (int bucket = 0; bucket < buckets.length && count > 0; bucket++) {
+				seen += buckets[bucket];
+				if (seen >= rank) {
+					return Math.min(highestIn(bucket), max) / 1e6;
+				}
+			}
+			return 0;
+		}
+
+		private static int bucket(long latency) {
+			if (latency < SUB_BUCKETS) {
+				return (int) latency;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(latency);
+			int subBucket = (int) (latency >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+		}
+
+		private static long highestIn(int bucket) {
+			if (bucket < SUB_BUCKETS) {
+				return bucket;
+			}
+			int shift = bucket / SUB_BUCKETS - 1;
+			long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+			return ((subBucket + 1) << shift) - 1;
+		}
+	}
+}
@@ -4,11 +4,24 @@
  */
 package com.ervacon.bitemporal;
 
+import static com.ervacon.bitemporal.TimeUtils.END_OF_TIME;
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
 import static junit.framework.TestCase.fail;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.After;
 import org.junit.Test;
+import org.threeten.extra.Interval;
 
 public class MiscTest {
 
@@ -64,4 +77,254 @@ public class MiscTest {
 			// expected
 		}
 	}
+
+	@Test
+	public void testOffHeapTrace() {
+		WrappedBitemporalProperty<String> onHeap = new WrappedBitemporalProperty<>(new ArrayList<>());
+		BitemporalProperty<String, Bitemporal> offHeap = new OffHeapBitemporalTrace<>(ValueCodec.utf8()).property();
+
+		for (int i = 0; i < 50; i++) {
+			TimeUtils.setReference(TimeUtils.day(1, 1, 2000 + i));
+			Instant start = TimeUtils.day(1 + i % 28, 1 + i % 12, 1980 + (i * 7) % 30);
+			Interval validity = i % 3 == 0
+					? TimeUtils.from(start) : TimeUtils.interval(start, start.plus(400, ChronoUnit.DAYS));
+			onHeap.set("v" + i, validity);
+			offHeap.set("v" + i, validity);
+			if (i % 10 == 9) {
+				onHeap.end(start);
+				offHeap.end(start);
+			}
+		}
+		offHeap.set(null, TimeUtils.from(TimeUtils.day(1, 1, 2040)));
+		onHeap.set(null, TimeUtils.from(TimeUtils.day(1, 1, 2040)));
+
+		assertEquals(onHeap.getTrace().toString(), offHeap.getTrace().toString());
+		for (int i = 0; i < 50; i++) {
+			Instant knownOn = TimeUtils.day(1, 6, 2000 + i);
+			Instant validOn = TimeUtils.day(1, 1, 1980 + i);
+			assertEquals(onHeap.on(validOn, knownOn), offHeap.on(validOn, knownOn));
+			assertEquals(onHeap.getHistory(knownOn).toString(), offHeap.getHistory(knownOn).toString());
+			assertEquals(onHeap.getEvolution(validOn).toString(), offHeap.getEvolution(validOn).toString());
+		}
+
+		int size = offHeap.getTrace().getData().size();
+		TimeUtils.setReference(TimeUtils.day(1, 1, 2000));
+		try {
+			offHeap.set("past", TimeUtils.from(TimeUtils.day(1, 1, 1990)));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(size, offHeap.getTrace().getData().size());
+	}
+
+	@Test
+	public void testScopedReference() throws Exception {
+		Person person = new Person("John Doe");
+
+		TimeUtils.runAt(TimeUtils.day(1, 1, 2000), () -> {
+			person.address().set(new Address("A", "B", "C"));
+			TimeUtils.runAt(TimeUtils.day(1, 1, 2001), () -> person.address().set(new Address("X", "Y", "Z")));
+			assertEquals(TimeUtils.day(1, 1, 2000), TimeUtils.now());
+		});
+		assertFalse(TimeUtils.isReferenceSet());
+		assertEquals("A", person.address().on(TimeUtils.day(1, 6, 2000), TimeUtils.day(1, 6, 2000)).getLine1());
+		assertEquals("X", person.address().on(TimeUtils.day(1, 6, 2001), TimeUtils.day(1, 6, 2001)).getLine1());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Instant inherited = TimeUtils.callAt(TimeUtils.day(1, 1, 2002),
+					() -> executor.submit(TimeUtils.inheritReference(TimeUtils::now)).get());
+			assertEquals(TimeUtils.day(1, 1, 2002), inherited);
+			assertFalse(executor.submit(TimeUtils::isReferenceSet).get());
+
+			// a task submitted without a reference time doesn't see a reference time left behind on the worker
+			executor.submit(() -> TimeUtils.setReference(TimeUtils.day(1, 1, 1990))).get();
+			assertFalse(executor.submit(TimeUtils.inheritReference(TimeUtils::isReferenceSet)).get());
+			executor.submit(TimeUtils.inheritReference(() -> TimeUtils.setReference(TimeUtils.day(1, 1, 1995)))).get();
+			assertEquals(TimeUtils.day(1, 1, 1990), executor.submit(TimeUtils::now).get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testNestedScopedReferences() throws Exception {
+		// frames behave the same whether they are bound to a scoped value (Java 25 and up) or kept in a thread local
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			TimeUtils.setReference(TimeUtils.day(1, 1, 1990));
+			TimeUtils.runAt(TimeUtils.day(1, 1, 2000), () -> {
+				assertEquals(TimeUtils.day(1, 1, 2000), TimeUtils.now());
+				TimeUtils.setReference(TimeUtils.day(1, 1, 2001));
+				TimeUtils.runAt(TimeUtils.day(1, 1, 2002), () -> {
+					assertEquals(TimeUtils.day(1, 1, 2002), TimeUtils.now());
+					TimeUtils.clearReference();
+					assertFalse(TimeUtils.isReferenceSet());
+				});
+				assertEquals(TimeUtils.day(1, 1, 2001), TimeUtils.now());
+				try {
+					assertEquals(TimeUtils.day(1, 1, 2001), executor.submit(TimeUtils.inheritReference(() -> {
+						TimeUtils.runAt(TimeUtils.day(1, 1, 2003), () -> { });
+						return TimeUtils.now();
+					})).get());
+					TimeUtils.callAt(TimeUtils.day(1, 1, 2004), () -> {
+						throw new IllegalArgumentException("Failing task");
+					});
+					fail();
+				} catch (IllegalArgumentException e) {
+					assertEquals(TimeUtils.day(1, 1, 2001), TimeUtils.now());
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			assertEquals(TimeUtils.day(1, 1, 1990), TimeUtils.now());
+			assertFalse(executor.submit(TimeUtils::isReferenceSet).get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testSplitTrace() {
+		WrappedBitemporalProperty<String> plain = new WrappedBitemporalProperty<>(new ArrayList<>());
+		SplitBitemporalTrace trace = new SplitBitemporalTrace(new ArrayList<>(), new ArrayList<>());
+		WrappedBitemporalProperty<String> split = new WrappedBitemporalProperty<>(trace);
+
+		Random random = new Random(42);
+		for (int i = 0; i < 100; i++) {
+			TimeUtils.setReference(TimeUtils.day(1, 1, 2000).plus(i, ChronoUnit.DAYS));
+			Instant start = TimeUtils.day(1, 1, 1990).plus(random.nextInt(3650), ChronoUnit.DAYS);
+			if (random.nextInt(5) == 0) {
+				plain.end(start);
+				split.end(start);
+			} else {
+				Interval validity = TimeUtils.interval(start, start.plus(random.nextInt(1000), ChronoUnit.DAYS));
+				plain.set("v" + i, validity);
+				split.set("v" + i, validity);
+			}
+		}
+
+		assertEquals(plain.getTrace().getData().size(), trace.getData().size());
+		assertEquals(plain.getHistory().size(), trace.getCurrentData().size());
+		for (int i = 0; i < 100; i++) {
+			Instant validOn = TimeUtils.day(1, 1, 1990).plus(i * 40, ChronoUnit.DAYS);
+			Instant knownOn = TimeUtils.day(1, 1, 2000).plus(i, ChronoUnit.DAYS);
+			assertEquals(plain.on(validOn), split.on(validOn));
+			assertEquals(plain.on(validOn, knownOn), split.on(validOn, knownOn));
+			assertEquals(plain.getHistory(knownOn).size(), split.getHistory(knownOn).size());
+			assertEquals(plain.getEvolution(validOn).size(), split.getEvolution(validOn).size());
+		}
+	}
+
+	@Test
+	public void testIndexedManipulations() {
+		BitemporalTrace indexed = new BitemporalTrace(new ArrayList<>());
+		BitemporalTrace scanned = new BitemporalTrace(new ArrayList<>());
+
+		Random random = new Random(42);
+		for (int i = 0; i < 500; i++) {
+			TimeUtils.setReference(TimeUtils.day(1, 1, 2000).plus(i / 2, ChronoUnit.DAYS));
+			Instant start = TimeUtils.day(1, 1, 1990).plus(random.nextInt(3650), ChronoUnit.DAYS);
+			Interval validity;
+			switch (random.nextInt(6)) {
+				case 0:
+					indexed.end(start);
+					scanned.get(start, TimeUtils.now()).forEach(bt -> bt.end());
+					continue;
+				case 1:
+					validity = TimeUtils.from(start);
+					break;
+				case 2:
+					validity = TimeUtils.interval(start, start);
+					break;
+				default:
+					validity = TimeUtils.interval(start, start.plus(1 + random.nextInt(1000), ChronoUnit.DAYS));
+			}
+			if (i % 100 == 75) {
+				// end bitemporals behind the back of the trace, keeping the size of the data collection
+				indexed.get(start, TimeUtils.now()).forEach(bt -> bt.end());
+				scanned.get(start, TimeUtils.now()).forEach(bt -> bt.end());
+			}
+			if (i % 100 == 50) {
+				// modify the data behind the back of the trace
+				indexed.getData().add(new BitemporalWrapper<>("x" + i, validity));
+				scanned.getData().add(new BitemporalWrapper<>("x" + i, validity));
+			} else {
+				indexed.add(new BitemporalWrapper<>("v" + i, validity));
+				addByScanning(scanned, new BitemporalWrapper<>("v" + i, validity));
+			}
+			assertEquals(scanned.toString(), indexed.toString());
+		}
+	}
+
+	@Test
+	public void testDifferences() {
+		WrappedBitemporalProperty<String> ours = new WrappedBitemporalProperty<>(new ArrayList<>());
+		WrappedBitemporalProperty<String> theirs = new WrappedBitemporalProperty<>(new ArrayList<>());
+
+		Random random = new Random(42);
+		for (int i = 0; i < 200; i++) {
+			TimeUtils.setReference(TimeUtils.day(1, 1, 2000).plus(i, ChronoUnit.DAYS));
+			Instant start = TimeUtils.day(1, 1, 1990).plus(random.nextInt(3650), ChronoUnit.DAYS);
+			Interval validity = TimeUtils.interval(start, start.plus(1 + random.nextInt(1000), ChronoUnit.DAYS));
+			String value = "v" + random.nextInt(3);
+			int target = random.nextInt(4);
+			if (target != 0) {
+				ours.set(value, validity);
+			}
+			if (target != 1) {
+				theirs.set(value, validity);
+			}
+			if (target == 2) {
+				ours.end(start);
+			}
+		}
+
+		for (Instant knownOn : new Instant[] { TimeUtils.now(), TimeUtils.day(1, 3, 2000) }) {
+			List<Interval> differences = ours.differences(theirs, knownOn);
+			assertEquals(differences, theirs.differences(ours, knownOn));
+			for (int i = 1; i < differences.size(); i++) {
+				assertTrue(differences.get(i - 1).getEnd().isBefore(differences.get(i).getStart()));
+			}
+			for (int i = 0; i < 2000; i++) {
+				Instant validOn = TimeUtils.day(1, 1, 1989).plus(random.nextInt(6000), ChronoUnit.DAYS);
+				boolean same = ours.hasValueOn(validOn, knownOn) == theirs.hasValueOn(validOn, knownOn)
+						&& Objects.equals(ours.on(validOn, knownOn), theirs.on(validOn, knownOn));
+				assertEquals(!same, differences.stream().anyMatch(range -> range.contains(validOn)));
+			}
+		}
+		assertEquals(0, ours.differences(ours).size());
+	}
+
+	/**
+	 * The straightforward implementation of {@link BitemporalTrace#add(Bitemporal)}, scanning the entire trace.
+	 */
+	private static void addByScanning(BitemporalTrace trace, Bitemporal newValue) {
+		Instant now = TimeUtils.now();
+		List<Bitemporal> toEnd = new ArrayList<>();
+		for (Bitemporal bt : trace.getHistory(now)) {
+			if (newValue.getValidityInterval().overlaps(bt.getValidityInterval())) {
+				toEnd.add(bt);
+			}
+		}
+		Collection<Bitemporal> toAdd = new ArrayList<>();
+		Instant start = newValue.getValidityInterval().getStart();
+		for (Bitemporal bt : trace.get(start, now)) {
+			if (bt.getValidityInterval().getStart().isBefore(start)) {
+				toAdd.add(bt.copyWith(TimeUtils.interval(bt.getValidityInterval().getStart(), start)));
+			}
+		}
+		Instant end = newValue.getValidityInterval().getEnd();
+		if (!end.equals(END_OF_TIME)) {
+			for (Bitemporal bt : trace.get(end, now)) {
+				if (bt.getValidityInterval().getStart().isBefore(end)) {
+					toAdd.add(bt.copyWith(TimeUtils.interval(end, bt.getValidityInterval().getEnd())));
+				}
+			}
+		}
+		toEnd.forEach(bt -> bt.end());
+		trace.getData().addAll(toAdd);
+		trace.getData().add(newValue.copyWith(newValue.getValidityInterval()));
+	}
 }
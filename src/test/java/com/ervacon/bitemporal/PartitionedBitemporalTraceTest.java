@@ -0,0 +1,164 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.day;
+import static com.ervacon.bitemporal.TimeUtils.from;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+import static junit.framework.TestCase.assertEquals;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Test;
+import org.threeten.extra.Interval;
+
+public class PartitionedBitemporalTraceTest {
+
+	@After
+	public void tearDown() throws Exception {
+		TimeUtils.clearReference();
+	}
+
+	@Test
+	public void testPartitioning() {
+		assertEquals(day(1, 1, 1975), Partitioning.yearly(ZoneOffset.UTC).partitionOf(day(3, 4, 1975)));
+		assertEquals(Instant.EPOCH, Partitioning.fixed(Duration.ofDays(7)).partitionOf(Instant.ofEpochSecond(60)));
+		assertEquals(Instant.EPOCH.minus(7, ChronoUnit.DAYS),
+				Partitioning.fixed(Duration.ofDays(7)).partitionOf(Instant.ofEpochSecond(-60)));
+	}
+
+	@Test
+	public void testSpanningVersion() {
+		List<Bitemporal> data = new ArrayList<>();
+		PartitionedBitemporalTrace trace = new PartitionedBitemporalTrace(data, Partitioning.yearly(ZoneOffset.UTC));
+		TimeUtils.setReference(day(1, 1, 2000));
+		trace.add(new BitemporalWrapper<>("a", interval(day(3, 4, 1980), day(3, 4, 1990))));
+		trace.add(new BitemporalWrapper<>("b", interval(day(1, 6, 1995), day(1, 6, 1996))));
+
+		// a version valid for many partitions is stored once, in the partition it starts in
+		assertEquals(2, data.size());
+		assertEquals(2, trace.getPartitionCount());
+		assertEquals("a", value(trace.find(day(1, 1, 1985), TimeUtils.now())));
+		assertEquals(1, trace.getPartitionCount(interval(day(1, 1, 1985), day(1, 1, 1985)), TimeUtils.now()));
+		assertEquals(1, trace.getEvolution(day(1, 1, 1989)).size());
+
+		// a range query only looks at the partitions holding versions overlapping with the range
+		Interval range = interval(day(1, 1, 1985), day(1, 1, 1986));
+		assertEquals(Arrays.asList("a"), values(trace.getOverlapping(range, TimeUtils.now())));
+		assertEquals(1, trace.getPartitionCount(range, TimeUtils.now()));
+		range = interval(day(1, 1, 1991), day(1, 1, 1994));
+		assertEquals(Arrays.asList(), values(trace.getOverlapping(range, TimeUtils.now())));
+		assertEquals(0, trace.getPartitionCount(range, TimeUtils.now()));
+		range = interval(day(1, 1, 1989), day(1, 1, 1997));
+		assertEquals(Arrays.asList("a", "b"), values(trace.getOverlapping(range, TimeUtils.now())));
+		assertEquals(2, trace.getPartitionCount(range, TimeUtils.now()));
+
+		// correcting part of the version splits it, the new versions go to the partitions they start in
+		TimeUtils.setReference(day(1, 1, 2001));
+		trace.add(new BitemporalWrapper<>("c", interval(day(1, 1, 1985), day(1, 1, 1986))));
+		assertEquals(5, data.size());
+		assertEquals(4, trace.getPartitionCount());
+		range = interval(day(1, 1, 1984), day(1, 1, 1987));
+		assertEquals(Arrays.asList("a", "c", "a"), values(trace.getOverlapping(range, TimeUtils.now())));
+		assertEquals("a", value(trace.find(day(1, 1, 1985), day(1, 1, 2000))));
+		assertEquals("c", value(trace.find(day(1, 1, 1985), TimeUtils.now())));
+
+		// the partitions are rebuilt when the data changes behind the back of the trace
+		data.add(new BitemporalWrapper<>("x", interval(day(1, 1, 1970), day(1, 1, 1971))));
+		assertEquals("x", value(trace.find(day(1, 6, 1970), TimeUtils.now())));
+		assertEquals(5, trace.getPartitionCount());
+	}
+
+	@Test
+	public void testRandomized() {
+		List<Bitemporal> data = new ArrayList<>();
+		PartitionedBitemporalTrace partitioned =
+				new PartitionedBitemporalTrace(data, Partitioning.fixed(Duration.ofDays(365)));
+		BitemporalTrace plain = new BitemporalTrace(new ArrayList<>());
+
+		Random random = new Random(42);
+		Instant recordedAt = day(1, 1, 2000);
+		for (int i = 0; i < 200; i++) {
+			recordedAt = recordedAt.plus(1 + random.nextInt(12), ChronoUnit.HOURS);
+			TimeUtils.setReference(recordedAt);
+			Instant start = day(3, 4, 1975).plus(random.nextInt(15000), ChronoUnit.DAYS);
+			if (random.nextInt(5) == 0) {
+				partitioned.end(start);
+				plain.end(start);
+			} else {
+				Interval validity = random.nextInt(10) == 0 ? from(start)
+						: interval(start, start.plus(random.nextInt(2000), ChronoUnit.DAYS));
+				partitioned.add(new BitemporalWrapper<>("v" + i, validity));
+				plain.add(new BitemporalWrapper<>("v" + i, validity));
+			}
+		}
+		assertEquals(plain.toString(), partitioned.toString());
+
+		for (int i = 0; i < 50; i++) {
+			Instant validOn = day(1, 1, 1975).plus(random.nextInt(16000), ChronoUnit.DAYS);
+			Instant knownOn = day(1, 1, 2000).plus(random.nextInt(100), ChronoUnit.DAYS);
+			assertEquals(sorted(plain.get(validOn, knownOn)), sorted(partitioned.get(validOn, knownOn)));
+			assertEquals(sorted(plain.getHistory(knownOn)), sorted(partitioned.getHistory(knownOn)));
+			assertEquals(sorted(plain.getEvolution(validOn)), sorted(partitioned.getEvolution(validOn)));
+			Interval range = interval(validOn, validOn.plus(random.nextInt(1000), ChronoUnit.DAYS));
+			List<Bitemporal> overlapping = plain.getHistory(knownOn).stream()
+					.filter(bt -> bt.getValidityInterval().overlaps(range))
+					.collect(Collectors.toList());
+			assertEquals(sorted(overlapping), sorted(partitioned.getOverlapping(range, knownOn)));
+		}
+	}
+
+	@Test
+	public void testPruning() {
+		PartitionedBitemporalTrace trace =
+				new PartitionedBitemporalTrace(new ArrayList<>(), Partitioning.yearly(ZoneOffset.UTC));
+		WrappedBitemporalProperty<String> address = new WrappedBitemporalProperty<>(trace);
+
+		// John moves every five years, registering his move a few days later
+		for (int year = 1975; year <= 2005; year += 5) {
+			TimeUtils.setReference(day(10, 4, year));
+			address.set("Street " + year, from(day(3, 4, year)));
+		}
+		TimeUtils.setReference(day(1, 1, 2010));
+		assertEquals(6, trace.getPartitionCount());
+
+		// the current knowledge only looks at the partition holding the version valid on the queried instant
+		assertEquals("Street 1980", address.on(day(1, 1, 1982)));
+		assertEquals(1, trace.getPartitionCount(interval(day(1, 1, 1982), day(1, 1, 1982)), TimeUtils.now()));
+		assertEquals("Street 2005", address.on(day(1, 1, 2008)));
+		assertEquals(0, trace.getPartitionCount(interval(day(1, 1, 2008), day(1, 1, 2008)), TimeUtils.now()));
+		assertEquals(3, trace.getPartitionCount(interval(day(1, 1, 1981), day(1, 1, 1992)), TimeUtils.now()));
+
+		// past knowledge looks at the partitions holding versions known back then
+		assertEquals("Street 1980", address.on(day(1, 1, 1982), day(1, 1, 1983)));
+		assertEquals(1, trace.getPartitionCount(interval(day(1, 1, 1982), day(1, 1, 1982)), day(1, 1, 1983)));
+		assertEquals("Street 1980", address.on(day(1, 1, 1992), day(1, 1, 1983)));
+		assertEquals(1, trace.getPartitionCount(interval(day(1, 1, 1992), day(1, 1, 1992)), day(1, 1, 1983)));
+		assertEquals("Street 1985", address.on(day(1, 1, 1992), day(1, 1, 1988)));
+		assertEquals(1, trace.getPartitionCount(interval(day(1, 1, 1992), day(1, 1, 1992)), day(1, 1, 1988)));
+		assertEquals(4, trace.getPartitionCount(interval(day(1, 1, 1992), day(1, 1, 1992)), null));
+	}
+
+	private static Object value(Bitemporal bt) {
+		return bt == null ? null : ((BitemporalWrapper<?>) bt).getValue();
+	}
+
+	private static List<Object> values(Collection<Bitemporal> bitemporals) {
+		return bitemporals.stream().map(PartitionedBitemporalTraceTest::value).collect(Collectors.toList());
+	}
+
+	private static List<String> sorted(Collection<Bitemporal> bitemporals) {
+		return bitemporals.stream().map(String::valueOf).sorted().collect(Collectors.toList());
+	}
+}
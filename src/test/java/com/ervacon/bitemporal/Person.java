@@ -5,15 +5,25 @@
 package com.ervacon.bitemporal;
 
 import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 
 public class Person implements Serializable {
 
 	private Long id;
+	private Long version; // optimistic locking, incremented whenever a trace is manipulated
 	private String name;
-	private Collection<BitemporalWrapper<Address>> address = new LinkedList<>();
-	private Collection<BitemporalWrapper<Boolean>> alive = new LinkedList<>();
+	private Collection<BitemporalWrapper<Address>> address = new ArrayList<>();
+	private Collection<BitemporalWrapper<Address>> workAddress = new ArrayList<>();
+	private Collection<BitemporalWrapper<Address>> workAddressHistory = new ArrayList<>();
+	private Instant workAddressHistoryEnd; // latest end of a recording interval in the work address history
+	private Collection<BooleanBitemporalWrapper> alive = new ArrayList<>();
+
+	// cached property handles, recreated when Hibernate replaces the collections
+	private transient WrappedBitemporalProperty<Address> addressProperty;
+	private transient WrappedBitemporalProperty<Address> workAddressProperty;
+	private transient BooleanBitemporalProperty aliveProperty;
 
 	/**
 	 * For Hibernate.
@@ -38,11 +48,29 @@ public class Person implements Serializable {
 	}
 
 	public WrappedBitemporalProperty<Address> address() {
-		return new WrappedBitemporalProperty<>(address);
+		if (addressProperty == null || !addressProperty.isBackedBy(address)) {
+			addressProperty = new WrappedBitemporalProperty<>(address);
+		}
+		return addressProperty;
+	}
+
+	/**
+	 * The work address keeps its current knowledge and history in separate tables.
+	 */
+	public WrappedBitemporalProperty<Address> workAddress() {
+		if (workAddressProperty == null || !workAddressProperty.isBackedBy(workAddress)
+				|| !workAddressProperty.isBackedBy(workAddressHistory)) {
+			workAddressProperty = new WrappedBitemporalProperty<>(new SplitBitemporalTrace(workAddress,
+					workAddressHistory, workAddressHistoryEnd, end -> workAddressHistoryEnd = end));
+		}
+		return workAddressProperty;
 	}
 
-	public WrappedBitemporalProperty<Boolean> alive() {
-		return new WrappedBitemporalProperty<>(alive);
+	public BooleanBitemporalProperty alive() {
+		if (aliveProperty == null || !aliveProperty.isBackedBy(alive)) {
+			aliveProperty = new BooleanBitemporalProperty(alive);
+		}
+		return aliveProperty;
 	}
 
 	@Override
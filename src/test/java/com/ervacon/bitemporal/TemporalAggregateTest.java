@@ -0,0 +1,144 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.day;
+import static com.ervacon.bitemporal.TimeUtils.from;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+import static junit.framework.TestCase.assertEquals;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+import org.junit.After;
+import org.junit.Test;
+import org.threeten.extra.Interval;
+
+public class TemporalAggregateTest {
+
+	private static final double SECONDS_PER_DAY = 24 * 60 * 60;
+
+	@After
+	public void tearDown() throws Exception {
+		TimeUtils.clearReference();
+	}
+
+	@Test
+	public void testAverageBalance() {
+		DoubleBitemporalProperty balance = new DoubleBitemporalProperty(new ArrayList<>());
+
+		TimeUtils.setReference(day(1, 1, 2000));
+		balance.set(100.0, from(day(1, 1, 2000)));
+		TimeUtils.setReference(day(11, 1, 2000));
+		balance.set(200.0, from(day(11, 1, 2000)));
+		TimeUtils.setReference(day(1, 2, 2000));
+
+		TemporalAggregate january = balance.aggregate(interval(day(1, 1, 2000), day(31, 1, 2000)));
+		assertEquals(2, january.getCount());
+		assertEquals(100.0, january.getMin());
+		assertEquals(200.0, january.getMax());
+		assertEquals(30 * SECONDS_PER_DAY, january.getSeconds());
+		assertEquals((10 * 100.0 + 20 * 200.0) / 30, january.getAverage(), 1e-9);
+
+		// correct the past: the balance was 150 from the 5th onwards
+		balance.set(150.0, interval(day(5, 1, 2000), day(11, 1, 2000)));
+		assertEquals((4 * 100.0 + 6 * 150.0 + 20 * 200.0) / 30,
+				balance.aggregate(interval(day(1, 1, 2000), day(31, 1, 2000))).getAverage(), 1e-9);
+		assertEquals((10 * 100.0 + 20 * 200.0) / 30,
+				balance.aggregate(interval(day(1, 1, 2000), day(31, 1, 2000)), day(15, 1, 2000)).getAverage(), 1e-9);
+
+		TemporalAggregate before = balance.aggregate(interval(day(1, 1, 1999), day(1, 1, 2000)));
+		assertEquals(0, before.getCount());
+		assertEquals(Double.NaN, before.getAverage());
+	}
+
+	@Test
+	public void testOffHeapProperty() {
+		ToDoubleFunction<Double> function = Double::doubleValue;
+		BitemporalProperty<Double, Bitemporal> balance =
+				new OffHeapBitemporalTrace<>(ValueCodec.<Double> serialization()).property();
+
+		TimeUtils.setReference(day(1, 1, 2000));
+		balance.set(100.0, from(day(1, 1, 2000)));
+		TimeUtils.setReference(day(1, 2, 2000));
+		Interval january = interval(day(1, 1, 2000), day(31, 1, 2000));
+		assertEquals(100.0, balance.aggregate(january, function).getAverage(), 1e-9);
+
+		// the aggregate index is kept up to date by setting a value through the property
+		balance.set(200.0, from(day(11, 1, 2000)));
+		assertEquals((10 * 100.0 + 20 * 200.0) / 30, balance.aggregate(january, function).getAverage(), 1e-9);
+		assertEquals(100.0, balance.aggregate(january, day(15, 1, 2000), function).getAverage(), 1e-9);
+	}
+
+	@Test
+	public void testIndexMatchesScan() {
+		Random random = new Random(42);
+		DoubleBitemporalProperty property = new DoubleBitemporalProperty(new ArrayList<>());
+		Instant recordedAt = day(1, 1, 2000);
+		for (int i = 0; i < 300; i++) {
+			recordedAt = recordedAt.plus(1 + random.nextInt(10), ChronoUnit.DAYS);
+			TimeUtils.setReference(recordedAt);
+
+			Instant start = day(1, 1, 1990).plus(random.nextInt(3650), ChronoUnit.DAYS);
+			switch (random.nextInt(5)) {
+				case 0:
+					property.set(random.nextInt(100), from(start));
+					break;
+				case 1:
+					property.set(random.nextInt(100), interval(start, start));
+					break;
+				case 2:
+					property.end(start);
+					break;
+				default:
+					Instant end = start.plus(random.nextInt(1000), ChronoUnit.DAYS);
+					property.set(random.nextInt(100), interval(start, end));
+			}
+
+			Instant rangeStart = day(1, 1, 1990).plus(random.nextInt(4000), ChronoUnit.DAYS);
+			Interval range = random.nextBoolean()
+					? from(rangeStart) : interval(rangeStart, rangeStart.plus(random.nextInt(2000), ChronoUnit.DAYS));
+			assertAggregate(scan(property, range, recordedAt), property.aggregate(range));
+			assertAggregate(scan(property, range, recordedAt),
+					new DoubleBitemporalProperty(property.getTrace()).aggregate(range));
+			Instant knownOn = day(1, 1, 2000).plus(random.nextInt(i + 1), ChronoUnit.DAYS);
+			assertAggregate(scan(property, range, knownOn), property.aggregate(range, knownOn));
+		}
+	}
+
+	private static TemporalAggregate scan(DoubleBitemporalProperty property, Interval range, Instant knownOn) {
+		long count = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		double sum = 0;
+		double seconds = 0;
+		for (DoubleBitemporalWrapper bt : property.getHistory(knownOn)) {
+			Instant start = bt.getValidityInterval().getStart().isAfter(range.getStart())
+					? bt.getValidityInterval().getStart() : range.getStart();
+			Instant end = bt.getValidityInterval().getEnd().isBefore(range.getEnd())
+					? bt.getValidityInterval().getEnd() : range.getEnd();
+			if (start.isBefore(end)) {
+				double duration = Duration.between(start, end).getSeconds();
+				count++;
+				min = Math.min(min, bt.getValue());
+				max = Math.max(max, bt.getValue());
+				sum += bt.getValue() * duration;
+				seconds += duration;
+			}
+		}
+		return new TemporalAggregate(count, min, max, sum, seconds);
+	}
+
+	private static void assertAggregate(TemporalAggregate expected, TemporalAggregate actual) {
+		assertEquals(expected.getCount(), actual.getCount());
+		assertEquals(expected.getMin(), actual.getMin());
+		assertEquals(expected.getMax(), actual.getMax());
+		assertEquals(expected.getSum(), actual.getSum(), Math.abs(expected.getSum()) * 1e-12);
+		assertEquals(expected.getSeconds(), actual.getSeconds(), expected.getSeconds() * 1e-12);
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.day;
+import static com.ervacon.bitemporal.TimeUtils.from;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+import static junit.framework.TestCase.assertEquals;
+
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TraceFollowerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() throws Exception {
+		TimeUtils.clearReference();
+	}
+
+	@Test
+	public void testInMemoryLog() {
+		TraceMutationLog log = new InMemoryTraceMutationLog();
+		WrappedBitemporalProperty<String> master =
+				new WrappedBitemporalProperty<>(new LoggedBitemporalTrace(new ArrayList<>(), log));
+		TraceFollower follower = new TraceFollower(log, new BitemporalTrace(new ArrayList<>()));
+
+		mutate(master, new Random(42), follower);
+		assertEquals(master.getTrace().toString(), follower.getReplica().toString());
+		assertEquals(0, follower.catchUp());
+	}
+
+	@Test
+	public void testFileLog() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("mutations.log");
+		try (FileTraceMutationLog log = new FileTraceMutationLog(file)) {
+			WrappedBitemporalProperty<String> master =
+					new WrappedBitemporalProperty<>(new LoggedBitemporalTrace(new ArrayList<>(), log));
+			TraceFollower follower =
+					new TraceFollower(new FileTraceMutationLog(file), new BitemporalTrace(new ArrayList<>()));
+
+			mutate(master, new Random(42), follower);
+			assertEquals(master.getTrace().toString(), follower.getReplica().toString());
+
+			// a replica catching up later
+			BitemporalTrace replica = new BitemporalTrace(new ArrayList<>());
+			TraceFollower late = new TraceFollower(new FileTraceMutationLog(file), replica);
+			late.catchUp();
+			TimeUtils.setReference(day(1, 1, 2100));
+			master.set("last", from(day(1, 1, 2000)));
+			assertEquals(1, late.getLag());
+			assertEquals(1, late.catchUp());
+			assertEquals(log.getEndPosition(), late.getAppliedPosition());
+			assertEquals(master.getTrace().toString(), replica.toString());
+		}
+	}
+
+	@Test
+	public void testPartiallyWrittenMutation() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("mutations.log");
+		try (FileTraceMutationLog log = new FileTraceMutationLog(file)) {
+			log.append(TraceMutation.add(day(1, 1, 2000), new BitemporalWrapper<>("a", from(day(1, 1, 1990)))));
+		}
+		// a writer died while writing its second mutation
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND))) {
+			out.writeInt(100);
+			out.write(new byte[10]);
+		}
+
+		try (FileTraceMutationLog log = new FileTraceMutationLog(file)) {
+			assertEquals(1, log.getEndPosition());
+			log.append(TraceMutation.add(day(2, 1, 2000), new BitemporalWrapper<>("b", from(day(1, 1, 1995)))));
+			assertEquals(2, log.getEndPosition());
+		}
+
+		BitemporalTrace replica = new BitemporalTrace(new ArrayList<>());
+		TraceFollower follower = new TraceFollower(new FileTraceMutationLog(file), replica);
+		assertEquals(2, follower.catchUp());
+		WrappedBitemporalProperty<String> property = new WrappedBitemporalProperty<>(replica);
+		assertEquals("a", property.on(day(1, 1, 1991), day(3, 1, 2000)));
+		assertEquals("b", property.on(day(1, 1, 1996), day(3, 1, 2000)));
+	}
+
+	private static void mutate(WrappedBitemporalProperty<String> master, Random random, TraceFollower follower) {
+		Instant recordedAt = day(1, 1, 2000);
+		for (int i = 0; i < 200; i++) {
+			recordedAt = recordedAt.plus(random.nextInt(10), ChronoUnit.DAYS);
+			TimeUtils.setReference(recordedAt);
+			Instant start = day(1, 1, 1990).plus(random.nextInt(3650), ChronoUnit.DAYS);
+			if (random.nextInt(5) == 0) {
+				master.end(start);
+			} else {
+				master.set("v" + i, interval(start, start.plus(random.nextInt(1000), ChronoUnit.DAYS)));
+			}
+			if (random.nextInt(20) == 0) {
+				assertEquals(follower.getLag(), follower.catchUp());
+				assertEquals(0, follower.getLag());
+			}
+		}
+		follower.catchUp();
+		assertEquals(master.getTrace().getData().size(), follower.getReplica().getData().size());
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.day;
+import static com.ervacon.bitemporal.TimeUtils.from;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.fail;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+import org.threeten.extra.Interval;
+
+public class TraceReplayerTest {
+
+	@After
+	public void tearDown() throws Exception {
+		TimeUtils.clearReference();
+	}
+
+	@Test
+	public void testReplayMatchesSequentialAdds() {
+		Random random = new Random(42);
+		List<TraceReplayer.Event<String>> events = new ArrayList<>();
+		Instant recordedAt = day(1, 1, 2000);
+		for (int i = 0; i < 500; i++) {
+			if (random.nextInt(5) > 0) {
+				recordedAt = recordedAt.plus(random.nextInt(10), ChronoUnit.DAYS);
+			}
+			Instant start = day(1, 1, 1990).plus(random.nextInt(3650), ChronoUnit.DAYS);
+			Interval validity;
+			switch (random.nextInt(4)) {
+				case 0:
+					validity = from(start);
+					break;
+				case 1:
+					validity = interval(start, start);
+					break;
+				default:
+					validity = interval(start, start.plus(1 + random.nextInt(1000), ChronoUnit.DAYS));
+			}
+			events.add(new TraceReplayer.Event<>(recordedAt, validity, "v" + i));
+		}
+
+		BitemporalTrace expected = new BitemporalTrace(new ArrayList<>());
+		for (TraceReplayer.Event<String> event : events) {
+			TimeUtils.setReference(event.getRecordedAt());
+			expected.add(new BitemporalWrapper<>(event.getValue(), event.getValidityInterval()));
+		}
+
+		List<Bitemporal> data = new ArrayList<>();
+		new TraceReplayer<String>(data).replay(events.stream());
+		assertEquals(expected.toString(), new BitemporalTrace(data).toString());
+
+		// continue on top of existing data
+		List<Bitemporal> firstHalf = new ArrayList<>();
+		new TraceReplayer<String>(firstHalf).replay(events.subList(0, 250).iterator());
+		new TraceReplayer<String>(firstHalf).replay(events.subList(250, 500).iterator());
+		assertEquals(expected.toString(), new BitemporalTrace(firstHalf).toString());
+	}
+
+	@Test
+	public void testReplayFromThePast() {
+		TraceReplayer<String> replayer = new TraceReplayer<>(new ArrayList<>());
+		replayer.replay(day(2, 1, 2000), from(day(1, 1, 2000)), "A");
+		try {
+			replayer.replay(day(1, 1, 2000), from(day(1, 1, 2000)), "B");
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal;
+
+import static com.ervacon.bitemporal.TimeUtils.day;
+import static com.ervacon.bitemporal.TimeUtils.from;
+import static com.ervacon.bitemporal.TimeUtils.interval;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+import javax.sql.DataSource;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Test;
+import org.threeten.extra.Interval;
+
+public class WriteBehindTest {
+
+	@After
+	public void tearDown() throws Exception {
+		TimeUtils.clearReference();
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		List<List<TraceChange>> batches = new ArrayList<>();
+		boolean[] failing = { false };
+		TraceWriter writer = changes -> {
+			if (failing[0]) {
+				throw new IllegalStateException("Database down");
+			}
+			batches.add(changes);
+		};
+		try (WriteBehindBuffer buffer = new WriteBehindBuffer(writer, 100)) {
+			WrappedBitemporalProperty<String> property = new WrappedBitemporalProperty<>(
+					new WriteBehindBitemporalTrace(new ArrayList<>(), 1L, buffer));
+
+			TimeUtils.setReference(day(1, 1, 2000));
+			property.set("a", from(day(1, 1, 1990)));
+			TimeUtils.setReference(day(2, 1, 2000));
+			property.set("b", from(day(1, 1, 1995)));
+			buffer.flush().get();
+			assertEquals(1, batches.size());
+			assertEquals(Arrays.asList(TraceChange.Type.INSERT, TraceChange.Type.INSERT, TraceChange.Type.INSERT),
+					types(batches.get(0)));
+			assertEquals(day(2, 1, 2000), batches.get(0).get(0).getRecordInterval().getEnd());
+
+			failing[0] = true;
+			TimeUtils.setReference(day(3, 1, 2000));
+			property.set("c", from(day(1, 1, 1995)));
+			try {
+				buffer.flush().get();
+				fail();
+			} catch (ExecutionException e) {
+				// expected
+			}
+			TimeUtils.setReference(day(4, 1, 2000));
+			property.set("d", from(day(1, 1, 1995)));
+			assertEquals(3, buffer.getPendingCount());
+
+			failing[0] = false;
+			buffer.flush().get();
+			assertEquals(2, batches.size());
+			assertEquals(Arrays.asList(TraceChange.Type.UPDATE, TraceChange.Type.INSERT, TraceChange.Type.INSERT),
+					types(batches.get(1)));
+			assertEquals(day(4, 1, 2000), batches.get(1).get(1).getRecordInterval().getEnd());
+			assertEquals(0, buffer.getPendingCount());
+		}
+	}
+
+	@Test
+	public void testFailingClose() throws Exception {
+		WriteBehindBuffer buffer = new WriteBehindBuffer(changes -> {
+			throw new IllegalStateException("Database down");
+		}, 100);
+		WrappedBitemporalProperty<String> property = new WrappedBitemporalProperty<>(
+				new WriteBehindBitemporalTrace(new ArrayList<>(), 1L, buffer));
+		TimeUtils.setReference(day(1, 1, 2000));
+		property.set("a", from(day(1, 1, 1990)));
+		try {
+			buffer.close();
+			fail();
+		} catch (ExecutionException e) {
+			assertEquals("Database down", e.getCause().getMessage());
+		}
+		assertEquals(1, buffer.getPendingCount());
+	}
+
+	@Test
+	public void testJdbc() throws Exception {
+		JDBCDataSource dataSource = new JDBCDataSource();
+		dataSource.setUrl("jdbc:hsqldb:mem:writebehind");
+		dataSource.setUser("sa");
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("create table Trace (owner bigint, value varchar(20), validityStart timestamp, "
+					+ "validityEnd timestamp, recordStart timestamp, recordEnd timestamp)");
+		}
+
+		JdbcTraceWriter writer = new JdbcTraceWriter(dataSource, "Trace", "owner", Arrays.asList("value"),
+				bt -> new Object[] { ((BitemporalWrapper<?>) bt).getValue() });
+		List<WrappedBitemporalProperty<String>> properties = new ArrayList<>();
+		try (WriteBehindBuffer buffer = new WriteBehindBuffer(writer, 10)) {
+			for (long owner = 0; owner < 5; owner++) {
+				properties.add(new WrappedBitemporalProperty<>(
+						new WriteBehindBitemporalTrace(new ArrayList<>(), owner, buffer)));
+			}
+			Random random = new Random(42);
+			Instant recordedAt = day(1, 1, 2000);
+			for (int i = 0; i < 200; i++) {
+				recordedAt = recordedAt.plus(1 + random.nextInt(3), ChronoUnit.DAYS);
+				TimeUtils.setReference(recordedAt);
+				WrappedBitemporalProperty<String> property = properties.get(random.nextInt(properties.size()));
+				Instant start = day(1, 1, 1990).plus(random.nextInt(3650), ChronoUnit.DAYS);
+				if (random.nextInt(5) == 0) {
+					property.end(start);
+				} else {
+					property.set("v" + i, interval(start, start.plus(1 + random.nextInt(1000), ChronoUnit.DAYS)));
+				}
+			}
+			buffer.flush().get();
+		}
+
+		List<String> expected = new ArrayList<>();
+		for (long owner = 0; owner < properties.size(); owner++) {
+			for (Bitemporal bt : properties.get((int) owner).getTrace().getData()) {
+				expected.add(owner + " " + bt);
+			}
+		}
+		List<String> actual = new ArrayList<>();
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+				ResultSet rows = statement.executeQuery("select * from Trace")) {
+			while (rows.next()) {
+				Interval validity = interval(
+						rows.getTimestamp("validityStart").toInstant(), rows.getTimestamp("validityEnd").toInstant());
+				Interval record = interval(
+						rows.getTimestamp("recordStart").toInstant(), rows.getTimestamp("recordEnd").toInstant());
+				String value = rows.getString("value");
+				actual.add(rows.getLong("owner") + " " + validity + "  ~  " + record + "  ~  " + value);
+			}
+		}
+		assertTrue(expected.size() > 200);
+		Collections.sort(expected);
+		Collections.sort(actual);
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testJdbcRowCounts() throws Exception {
+		JDBCDataSource dataSource = new JDBCDataSource();
+		dataSource.setUrl("jdbc:hsqldb:mem:rowcounts");
+		dataSource.setUser("sa");
+		execute(dataSource, "create table Trace (id bigint generated by default as identity primary key, "
+				+ "owner bigint, value varchar(20), validityStart timestamp, validityEnd timestamp, "
+				+ "recordStart timestamp, recordEnd timestamp)");
+
+		Map<Bitemporal, Long> ids = new IdentityHashMap<>();
+		JdbcTraceWriter writer = new JdbcTraceWriter(dataSource, "Trace", "owner", Arrays.asList("value"),
+				bt -> new Object[] { ((BitemporalWrapper<?>) bt).getValue() }, "id", ids::get);
+		try (WriteBehindBuffer buffer = new WriteBehindBuffer(writer, 100)) {
+			WrappedBitemporalProperty<String> first = new WrappedBitemporalProperty<>(
+					new WriteBehindBitemporalTrace(new ArrayList<>(), 1L, buffer));
+			WrappedBitemporalProperty<String> second = new WrappedBitemporalProperty<>(
+					new WriteBehindBitemporalTrace(new ArrayList<>(), 2L, buffer));
+			TimeUtils.setReference(day(1, 1, 2000));
+			first.set("a", from(day(1, 1, 1990)));
+			second.set("b", from(day(1, 1, 1990)));
+			buffer.flush().get();
+			ids.put(first.getTrace().getData().iterator().next(), 0L); // the first identity value
+			assertEquals(2, count(dataSource));
+
+			// another writer ended the row behind our back, updating it by id finds nothing
+			execute(dataSource, "update Trace set recordEnd = current_timestamp where id = 0");
+			TimeUtils.setReference(day(2, 1, 2000));
+			first.set("c", from(day(1, 1, 1995)));
+			try {
+				buffer.flush().get();
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause().getCause() instanceof SQLException);
+			}
+			assertEquals(3, buffer.getPendingCount());
+			assertEquals(2, count(dataSource));
+
+			// another writer stored the same row, updating it by owner, validity and recording start finds two
+			execute(dataSource,
+					"update Trace set recordEnd = (select recordEnd from Trace where owner = 2) where id = 0");
+			execute(dataSource, "insert into Trace (owner, value, validityStart, validityEnd, recordStart, recordEnd)"
+					+ " select owner, value, validityStart, validityEnd, recordStart, recordEnd"
+					+ " from Trace where id = 0");
+			ids.clear();
+			try {
+				buffer.flush().get();
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause().getCause() instanceof SQLException);
+			}
+			assertEquals(3, buffer.getPendingCount());
+			assertEquals(3, count(dataSource));
+
+			// once the conflict is resolved, the queued batch is written
+			execute(dataSource, "delete from Trace where id > 1");
+			buffer.flush().get();
+			assertEquals(0, buffer.getPendingCount());
+			assertEquals(4, count(dataSource));
+		}
+	}
+
+	@Test
+	public void testJdbcWithoutRowCounts() throws Exception {
+		JDBCDataSource dataSource = new JDBCDataSource();
+		dataSource.setUrl("jdbc:hsqldb:mem:norowcounts");
+		dataSource.setUser("sa");
+		execute(dataSource, "create table Trace (owner bigint, value varchar(20), validityStart timestamp, "
+				+ "validityEnd timestamp, recordStart timestamp, recordEnd timestamp)");
+
+		JdbcTraceWriter writer = new JdbcTraceWriter(withoutRowCounts(dataSource), "Trace", "owner",
+				Arrays.asList("value"), bt -> new Object[] { ((BitemporalWrapper<?>) bt).getValue() });
+		WriteBehindBuffer buffer = new WriteBehindBuffer(writer, 100);
+		WrappedBitemporalProperty<String> property = new WrappedBitemporalProperty<>(
+				new WriteBehindBitemporalTrace(new ArrayList<>(), 1L, buffer));
+		TimeUtils.setReference(day(1, 1, 2000));
+		property.set("a", from(day(1, 1, 1990)));
+		buffer.flush().get();
+		TimeUtils.setReference(day(2, 1, 2000));
+		property.set("b", from(day(1, 1, 1995)));
+		buffer.flush().get();
+		assertEquals(3, count(dataSource));
+
+		// updates are executed one by one, so a conflict is still detected
+		execute(dataSource, "delete from Trace where value = 'b'");
+		TimeUtils.setReference(day(3, 1, 2000));
+		property.set("c", from(day(1, 1, 1995)));
+		try {
+			buffer.close();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().getCause() instanceof SQLException);
+		}
+		assertEquals(2, count(dataSource));
+	}
+
+	/**
+	 * Returns a data source like given one, but with a driver that doesn't report the row counts of batched
+	 * statements.
+	 */
+	private static DataSource withoutRowCounts(DataSource dataSource) {
+		return proxy(DataSource.class, dataSource, (method, connection) -> !method.getName().equals("getConnection")
+				? connection : proxy(Connection.class, (Connection) connection, (connectionMethod, statement) ->
+						!connectionMethod.getName().equals("prepareStatement")
+								? statement : proxy(PreparedStatement.class, (PreparedStatement) statement,
+										WriteBehindTest::withoutRowCounts)));
+	}
+
+	private static Object withoutRowCounts(Method method, Object result) {
+		if (method.getName().equals("executeBatch")) {
+			Arrays.fill((int[]) result, Statement.SUCCESS_NO_INFO);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a proxy of given object, mapping the results of its methods using given function.
+	 */
+	private static <T> T proxy(Class<T> type, T target, BiFunction<Method, Object, Object> results) {
+		Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (self, method, args) -> {
+			try {
+				return results.apply(method, method.invoke(target, args));
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		});
+		return type.cast(proxy);
+	}
+
+	private static void execute(JDBCDataSource dataSource, String sql) throws SQLException {
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	private static int count(JDBCDataSource dataSource) throws SQLException {
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+				ResultSet rows = statement.executeQuery("select count(*) from Trace")) {
+			rows.next();
+			return rows.getInt(1);
+		}
+	}
+
+	private static List<TraceChange.Type> types(List<TraceChange> changes) {
+		List<TraceChange.Type> types = new ArrayList<>();
+		changes.forEach(change -> types.add(change.getType()));
+		return types;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * (c) Copyright Ervacon 2016.
+ * All Rights Reserved.
+ */
+package com.ervacon.bitemporal.support;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.hibernate.Session;
+
+/**
+ * Loads the bitemporals of many entities valid on some instant as known on another instant, in a few queries,
+ * avoiding to initialize a bitemporal collection (with its entire history) per entity.
+ * <p>
+ * Loaded bitemporals are returned per entity rather than put in the mapped collections of the entities, since
+ * Hibernate would consider such a partially loaded collection complete. Wrap them in a trace to query them, e.g.
+ * <code>new WrappedBitemporalProperty&lt;&gt;(bitemporals).on(validOn, knownOn)</code>.
+ */
+public class AsOfLoader {
+
+	/**
+	 * The default maximum number of entity ids passed in a single query, staying within database limits.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private final Session session;
+	private final int batchSize;
+
+	public AsOfLoader(Session session) {
+		this(session, DEFAULT_BATCH_SIZE);
+	}
+
+	public AsOfLoader(Session session, int batchSize) {
+		this.session = session;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Load the bitemporals valid on given instant as known on specified instant, from the given collections of the
+	 * entities with given ids. A trace split over several collections (e.g. current and history) needs all of them
+	 * when asking about past knowledge. Entities without a matching bitemporal are absent from the result.
+	 */
+	public <ID extends Serializable, T> Map<ID, List<T>> load(String entityName, Collection<ID> ids,
+			Instant validOn, Instant knownOn, String... collections) {
+		Map<ID, List<T>> result = new HashMap<>();
+		List<ID> idList = new ArrayList<>(ids);
+		for (int from = 0; from < idList.size(); from += batchSize) {
+			List<ID> batch = idList.subList(from, Math.min(from + batchSize, idList.size()));
+			for (String collection : collections) {
+				String query = "select e.id, b from " + entityName + " e join e." + collection + " b"
+						+ " where e.id in (:ids)"
+						+ " and b.validityInterval.start <= :validOn and b.validityInterval.end > :validOn"
+						+ " and b.recordInterval.start <= :knownOn and b.recordInterval.end > :knownOn";
+				List<Object[]> rows = session.createQuery(query, Object[].class)
+						.setParameterList("ids", batch)
+						.setParameter("validOn", validOn)
+						.setParameter("knownOn", knownOn)
+						.list();
+				for (Object[] row : rows) {
+					@SuppressWarnings("unchecked")
+					ID id = (ID) row[0];
+					@SuppressWarnings("unchecked")
+					T bt = (T) row[1];
+					result.computeIfAbsent(id, key -> new ArrayList<>()).add(bt);
+				}
+			}
+		}
+		return result;
+	}
+}
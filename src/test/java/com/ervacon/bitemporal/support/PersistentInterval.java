@@ -10,7 +10,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
 import org.hibernate.HibernateException;
-import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hibernate.type.InstantType;
 import org.hibernate.type.Type;
 import org.hibernate.usertype.CompositeUserType;
@@ -69,7 +69,7 @@ public class PersistentInterval implements CompositeUserType {
 	}
 
 	@Override
-	public Object nullSafeGet(ResultSet resultSet, String[] names, SessionImplementor session, Object owner)
+	public Object nullSafeGet(ResultSet resultSet, String[] names, SharedSessionContractImplementor session, Object owner)
 			throws HibernateException, SQLException {
 		if (resultSet == null) {
 			return null;
@@ -84,7 +84,7 @@ public class PersistentInterval implements CompositeUserType {
 	}
 
 	@Override
-	public void nullSafeSet(PreparedStatement statement, Object value, int index, SessionImplementor session)
+	public void nullSafeSet(PreparedStatement statement, Object value, int index, SharedSessionContractImplementor session)
 			throws HibernateException, SQLException {
 		Instant start = value != null ? ((Interval) value).getStart() : null;
 		Instant end = value != null ? ((Interval) value).getEnd() : null;
@@ -104,17 +104,17 @@ public class PersistentInterval implements CompositeUserType {
 	}
 
 	@Override
-	public Serializable disassemble(Object value, SessionImplementor session) throws HibernateException {
+	public Serializable disassemble(Object value, SharedSessionContractImplementor session) throws HibernateException {
 		return (Serializable) value;
 	}
 
 	@Override
-	public Object assemble(Serializable cached, SessionImplementor session, Object owner) throws HibernateException {
+	public Object assemble(Serializable cached, SharedSessionContractImplementor session, Object owner) throws HibernateException {
 		return cached;
 	}
 
 	@Override
-	public Object replace(Object original, Object target, SessionImplementor session, Object owner)
+	public Object replace(Object original, Object target, SharedSessionContractImplementor session, Object owner)
 			throws HibernateException {
 		return original;
 	}